@@ -0,0 +1,22 @@
+package benchmark;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Reads the JVM's per-thread allocation counter, so the examples can report
+ * how many heap bytes a piece of code allocated on the calling thread. The
+ * counter covers every allocation of the thread, so the measured code should
+ * run without unrelated work in between the two reads.
+ */
+//Bytes allocated by the current thread
+public final class AllocationMeter {
+	private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+
+	private AllocationMeter() {
+	}
+
+	public static long allocatedBytes() {
+		return THREADS.getCurrentThreadAllocatedBytes();
+	}
+}
@@ -0,0 +1,57 @@
+package benchmark;
+
+/**
+ * Sink for the results of the micro-benchmarks in this project. Storing only
+ * the last result of a loop in a volatile field lets the JIT merge or hoist
+ * the calls whose results are overwritten, so every measured result has to be
+ * consumed. Each consume compares the value with volatile fields that never
+ * hold it; the JIT cannot prove the comparison false, so it has to produce
+ * every value, yet the branch is never taken. Objects are in addition kept
+ * now and then, ever more rarely, so the JIT has to assume that they escape
+ * and cannot drop the allocations being measured.
+ *
+ * A blackhole is not thread-safe; every benchmark thread uses its own.
+ */
+//Consumes benchmark results so the work producing them cannot be eliminated
+public final class Blackhole {
+	private static final int MAX_KEEP_MASK = (1 << 20) - 1;
+
+	// Distinct values, so no consumed value can equal both fields of a pair
+	private volatile Object object1 = new Object();
+	private volatile Object object2 = new Object();
+	private volatile long long1 = 1;
+	private volatile long long2 = 2;
+	private volatile double double1 = 1;
+	private volatile double double2 = 2;
+
+	private int random = (int) System.nanoTime() | 1;
+	private int keepMask = 1;
+	private Object kept;
+
+	public void consume(Object value) {
+		if (value == object1 & value == object2) {
+			throw new IllegalStateException("Blackhole fields were overwritten");
+		}
+		int next = random = random * 1664525 + 1013904223;
+		if ((next & keepMask) == 0) {
+			kept = value;
+			keepMask = Math.min(MAX_KEEP_MASK, (keepMask << 1) | 1);
+		}
+	}
+
+	public void consume(long value) {
+		if (value == long1 & value == long2) {
+			throw new IllegalStateException("Blackhole fields were overwritten");
+		}
+	}
+
+	public void consume(double value) {
+		if (value == double1 & value == double2) {
+			throw new IllegalStateException("Blackhole fields were overwritten");
+		}
+	}
+
+	public void consume(boolean value) {
+		consume(value ? 1L : 0L);
+	}
+}
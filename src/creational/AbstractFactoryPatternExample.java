@@ -1,5 +1,16 @@
 package creational;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
 /**
  * Abstract Factory Pattern says that just define an interface or abstract class
  * for creating families of related (or dependent) objects but without
@@ -19,11 +30,90 @@ interface GUIFactory {
 //Abstract product interface for Button
 interface Button {
 	void render();
+
+	// Writes the output into a frame instead of straight to System.out. Buttons that only print themselves
+	// still render: the frame is flushed first, so their output keeps its place in the frame
+	default void render(FrameBuffer frame) {
+		frame.flush();
+		render();
+	}
 }
 
 //Abstract product interface for Checkbox
 interface Checkbox {
 	void render();
+
+	// Same as Button.render(FrameBuffer)
+	default void render(FrameBuffer frame) {
+		frame.flush();
+		render();
+	}
+}
+
+//Shared buffer that collects the output of one frame and writes it in one call
+class FrameBuffer {
+	private final StringBuilder buffer = new StringBuilder(4096);
+	private final OutputStream out;
+	private final CharsetEncoder encoder;
+	// Reused between frames, grown when a frame does not fit
+	private ByteBuffer bytes = ByteBuffer.allocate(8192);
+	private int components;
+
+	public FrameBuffer(OutputStream out) {
+		this(out, Charset.defaultCharset());
+	}
+
+	public FrameBuffer(OutputStream out, Charset charset) {
+		this.out = out;
+		this.encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	public void writeLine(String line) {
+		buffer.append(line).append(System.lineSeparator());
+		components++;
+	}
+
+	public int getPendingComponents() {
+		return components;
+	}
+
+	// Encodes the frame into the reused byte buffer and writes it with a single I/O call
+	public void flush() {
+		if (buffer.length() > 0) {
+			try {
+				encodeFrame();
+				out.write(bytes.array(), 0, bytes.position());
+				out.flush();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			buffer.setLength(0);
+		}
+		components = 0;
+	}
+
+	private void encodeFrame() throws CharacterCodingException {
+		CharBuffer chars = CharBuffer.wrap(buffer);
+		encoder.reset();
+		bytes.clear();
+		CoderResult result;
+		while ((result = encoder.encode(chars, bytes, true)).isOverflow()) {
+			grow();
+		}
+		if (result.isError()) {
+			result.throwException();
+		}
+		while (encoder.flush(bytes).isOverflow()) {
+			grow();
+		}
+	}
+
+	private void grow() {
+		ByteBuffer larger = ByteBuffer.allocate(bytes.capacity() * 2);
+		bytes.flip();
+		bytes = larger.put(bytes);
+	}
 }
 
 //Concrete implementation of GUIFactory for Windows
@@ -54,33 +144,61 @@ class MacFactory implements GUIFactory {
 
 //Concrete implementation of Button for Windows
 class WindowsButton implements Button {
+	private static final String OUTPUT = "Rendering a Windows button";
+
 	@Override
 	public void render() {
-		System.out.println("Rendering a Windows button");
+		System.out.println(OUTPUT);
+	}
+
+	@Override
+	public void render(FrameBuffer frame) {
+		frame.writeLine(OUTPUT);
 	}
 }
 
 //Concrete implementation of Checkbox for Windows
 class WindowsCheckbox implements Checkbox {
+	private static final String OUTPUT = "Rendering a Windows checkbox";
+
 	@Override
 	public void render() {
-		System.out.println("Rendering a Windows checkbox");
+		System.out.println(OUTPUT);
+	}
+
+	@Override
+	public void render(FrameBuffer frame) {
+		frame.writeLine(OUTPUT);
 	}
 }
 
 //Concrete implementation of Button for Mac
 class MacButton implements Button {
+	private static final String OUTPUT = "Rendering a Mac button";
+
 	@Override
 	public void render() {
-		System.out.println("Rendering a Mac button");
+		System.out.println(OUTPUT);
+	}
+
+	@Override
+	public void render(FrameBuffer frame) {
+		frame.writeLine(OUTPUT);
 	}
 }
 
 //Concrete implementation of Checkbox for Mac
 class MacCheckbox implements Checkbox {
+	private static final String OUTPUT = "Rendering a Mac checkbox";
+
 	@Override
 	public void render() {
-		System.out.println("Rendering a Mac checkbox");
+		System.out.println(OUTPUT);
+	}
+
+	@Override
+	public void render(FrameBuffer frame) {
+		frame.writeLine(OUTPUT);
 	}
 }
 
@@ -90,6 +90,16 @@ class ConcreteHouseBuilder implements HouseBuilder {
 	public House build() {
 		return new House(floors, bedrooms, bathrooms, hasGarage, hasSwimmingPool);
 	}
+
+	// Packed mode: all five fields encoded into a single long
+	public PackedHouse buildPacked() {
+		return PackedHouse.of(floors, bedrooms, bathrooms, hasGarage, hasSwimmingPool);
+	}
+
+	// Packed mode sharing one instance per distinct configuration
+	public PackedHouse buildInterned() {
+		return buildPacked().intern();
+	}
 }
 
 //Director class (optional)
@@ -0,0 +1,108 @@
+package creational;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The buttons and checkboxes produced by WindowsFactory and MacFactory hold no
+ * state, so one instance per platform can be shared by every caller. The
+ * caching factory hands out the same components of such a platform again and
+ * again. Only those two factories are known to be stateless; components of any
+ * other factory may carry state and are never shared. Components are then drawn by a frame renderer, which lets
+ * each component write into a shared FrameBuffer and writes the whole frame
+ * with a single I/O call instead of one call per component.
+ */
+//Factory that reuses the stateless components of a platform factory
+class CachingGUIFactory implements GUIFactory {
+	// Platforms whose components hold no state, keyed by the exact factory class
+	private static final Map<Class<?>, CachingGUIFactory> PLATFORMS = Map.of(
+			WindowsFactory.class, new CachingGUIFactory(new WindowsFactory()),
+			MacFactory.class, new CachingGUIFactory(new MacFactory()));
+
+	private final Button button;
+	private final Checkbox checkbox;
+
+	private CachingGUIFactory(GUIFactory platform) {
+		this.button = platform.createButton();
+		this.checkbox = platform.createCheckbox();
+	}
+
+	// Returns the shared caching factory of the platform the given factory belongs to, rejecting factories
+	// whose components might hold state
+	public static CachingGUIFactory forPlatform(GUIFactory platform) {
+		if (platform instanceof CachingGUIFactory) {
+			return (CachingGUIFactory) platform;
+		}
+		CachingGUIFactory cached = PLATFORMS.get(platform.getClass());
+		if (cached == null) {
+			throw new IllegalArgumentException(
+					platform.getClass().getName() + " is not known to create stateless components");
+		}
+		return cached;
+	}
+
+	@Override
+	public Button createButton() {
+		return button;
+	}
+
+	@Override
+	public Checkbox createCheckbox() {
+		return checkbox;
+	}
+}
+
+//Collects the components of a frame and renders them into one buffer
+class FrameRenderer {
+
+	// Component render call into a frame
+	interface Renderable {
+		void render(FrameBuffer frame);
+	}
+
+	private final FrameBuffer frame;
+	private final List<Renderable> components = new ArrayList<>();
+
+	public FrameRenderer(FrameBuffer frame) {
+		this.frame = frame;
+	}
+
+	public FrameRenderer add(Button button) {
+		components.add(button::render);
+		return this;
+	}
+
+	public FrameRenderer add(Checkbox checkbox) {
+		components.add(checkbox::render);
+		return this;
+	}
+
+	// Renders every component into the frame buffer and flushes it once
+	public void renderFrame() {
+		for (Renderable component : components) {
+			component.render(frame);
+		}
+		frame.flush();
+	}
+}
+
+public class CachingGUIFactoryExample {
+
+	public static void main(String[] args) {
+		GUIFactory windows = CachingGUIFactory.forPlatform(new WindowsFactory());
+		GUIFactory mac = CachingGUIFactory.forPlatform(new MacFactory());
+
+		// Stateless components are created once per platform
+		System.out.println("Same button: " + (windows.createButton() == windows.createButton()));
+
+		FrameRenderer renderer = new FrameRenderer(new FrameBuffer(System.out));
+		for (int i = 0; i < 3; i++) {
+			renderer.add(windows.createButton()).add(windows.createCheckbox());
+			renderer.add(mac.createButton()).add(mac.createCheckbox());
+		}
+
+		// All twelve components reach System.out in a single write
+		renderer.renderFrame();
+	}
+}
@@ -0,0 +1,279 @@
+package creational;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * HouseBuilder builds one House object per chain of setters, which costs a
+ * builder and a House allocation per row in bulk loads. The batch builder
+ * stores rows column by column instead: one int array per numeric field and a
+ * BitSet per flag. Rows are read through a reusable HouseView flyweight, so no
+ * House objects are created unless a caller asks for one. Every thread appends
+ * through its own appender, so parallel ingest needs no locking per row, and
+ * the finished columns can be exported to and imported from a ByteBuffer.
+ */
+//Column storage of house rows
+class HouseColumns {
+	private static final int INITIAL_CAPACITY = 1024;
+
+	int size;
+	int[] floors;
+	int[] bedrooms;
+	int[] bathrooms;
+	final BitSet garages;
+	final BitSet swimmingPools;
+
+	HouseColumns() {
+		this(INITIAL_CAPACITY);
+	}
+
+	HouseColumns(int capacity) {
+		floors = new int[capacity];
+		bedrooms = new int[capacity];
+		bathrooms = new int[capacity];
+		garages = new BitSet(capacity);
+		swimmingPools = new BitSet(capacity);
+	}
+
+	void append(int floors, int bedrooms, int bathrooms, boolean hasGarage, boolean hasSwimmingPool) {
+		if (size == this.floors.length) {
+			grow(size + 1);
+		}
+		int row = size++;
+		this.floors[row] = floors;
+		this.bedrooms[row] = bedrooms;
+		this.bathrooms[row] = bathrooms;
+		if (hasGarage) {
+			garages.set(row);
+		}
+		if (hasSwimmingPool) {
+			swimmingPools.set(row);
+		}
+	}
+
+	// Appends all rows of other behind the rows of this table
+	void appendAll(HouseColumns other) {
+		grow(size + other.size);
+		System.arraycopy(other.floors, 0, floors, size, other.size);
+		System.arraycopy(other.bedrooms, 0, bedrooms, size, other.size);
+		System.arraycopy(other.bathrooms, 0, bathrooms, size, other.size);
+		for (int i = other.garages.nextSetBit(0); i >= 0; i = other.garages.nextSetBit(i + 1)) {
+			garages.set(size + i);
+		}
+		for (int i = other.swimmingPools.nextSetBit(0); i >= 0; i = other.swimmingPools.nextSetBit(i + 1)) {
+			swimmingPools.set(size + i);
+		}
+		size += other.size;
+	}
+
+	private void grow(int minCapacity) {
+		if (minCapacity <= floors.length) {
+			return;
+		}
+		int capacity = Math.max(minCapacity, floors.length + (floors.length >> 1));
+		floors = Arrays.copyOf(floors, capacity);
+		bedrooms = Arrays.copyOf(bedrooms, capacity);
+		bathrooms = Arrays.copyOf(bathrooms, capacity);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public HouseView view() {
+		return new HouseView(this);
+	}
+
+	// Bytes needed by writeTo: row count, three int columns and two bit columns
+	public int byteSize() {
+		int words = (size + 63) >>> 6;
+		return Integer.BYTES + 3 * size * Integer.BYTES + 2 * words * Long.BYTES;
+	}
+
+	public void writeTo(ByteBuffer buffer) {
+		buffer.putInt(size);
+		putInts(buffer, floors);
+		putInts(buffer, bedrooms);
+		putInts(buffer, bathrooms);
+		putBits(buffer, garages);
+		putBits(buffer, swimmingPools);
+	}
+
+	public static HouseColumns readFrom(ByteBuffer buffer) {
+		int size = buffer.getInt();
+		HouseColumns columns = new HouseColumns(Math.max(size, 1));
+		getInts(buffer, columns.floors, size);
+		getInts(buffer, columns.bedrooms, size);
+		getInts(buffer, columns.bathrooms, size);
+		getBits(buffer, columns.garages, size);
+		getBits(buffer, columns.swimmingPools, size);
+		columns.size = size;
+		return columns;
+	}
+
+	private void putInts(ByteBuffer buffer, int[] column) {
+		buffer.asIntBuffer().put(column, 0, size);
+		buffer.position(buffer.position() + size * Integer.BYTES);
+	}
+
+	private void putBits(ByteBuffer buffer, BitSet column) {
+		int words = (size + 63) >>> 6;
+		long[] bits = column.toLongArray();
+		for (int i = 0; i < words; i++) {
+			buffer.putLong(i < bits.length ? bits[i] : 0L);
+		}
+	}
+
+	private static void getInts(ByteBuffer buffer, int[] column, int size) {
+		buffer.asIntBuffer().get(column, 0, size);
+		buffer.position(buffer.position() + size * Integer.BYTES);
+	}
+
+	private static void getBits(ByteBuffer buffer, BitSet column, int size) {
+		int words = (size + 63) >>> 6;
+		for (int word = 0; word < words; word++) {
+			long bits = buffer.getLong();
+			while (bits != 0) {
+				int bit = Long.numberOfTrailingZeros(bits);
+				column.set((word << 6) + bit);
+				bits &= bits - 1;
+			}
+		}
+	}
+}
+
+//Reusable view of one row of HouseColumns
+class HouseView {
+	private final HouseColumns columns;
+	private int row;
+
+	HouseView(HouseColumns columns) {
+		this.columns = columns;
+	}
+
+	public HouseView moveTo(int row) {
+		if (row < 0 || row >= columns.size) {
+			throw new IndexOutOfBoundsException("Row " + row + " out of bounds for size " + columns.size);
+		}
+		this.row = row;
+		return this;
+	}
+
+	public int getFloors() {
+		return columns.floors[row];
+	}
+
+	public int getBedrooms() {
+		return columns.bedrooms[row];
+	}
+
+	public int getBathrooms() {
+		return columns.bathrooms[row];
+	}
+
+	public boolean hasGarage() {
+		return columns.garages.get(row);
+	}
+
+	public boolean hasSwimmingPool() {
+		return columns.swimmingPools.get(row);
+	}
+
+	// Materializes the current row, for callers that need a real House
+	public House toHouse() {
+		return new House(getFloors(), getBedrooms(), getBathrooms(), hasGarage(), hasSwimmingPool());
+	}
+
+	@Override
+	public String toString() {
+		return "House{" + "floors=" + getFloors() + ", bedrooms=" + getBedrooms() + ", bathrooms=" + getBathrooms()
+				+ ", hasGarage=" + hasGarage() + ", hasSwimmingPool=" + hasSwimmingPool() + '}';
+	}
+}
+
+//Batch builder collecting rows from any number of threads
+class HouseBatchBuilder {
+
+	// Appender owned by one thread, filling its own columns
+	public static final class Appender {
+		private final HouseColumns columns = new HouseColumns();
+
+		public Appender append(int floors, int bedrooms, int bathrooms, boolean hasGarage, boolean hasSwimmingPool) {
+			columns.append(floors, bedrooms, bathrooms, hasGarage, hasSwimmingPool);
+			return this;
+		}
+	}
+
+	private final List<Appender> appenders = new CopyOnWriteArrayList<>();
+	private final ThreadLocal<Appender> threadAppender = ThreadLocal.withInitial(this::newAppender);
+
+	// Returns a new appender; it must only be used by one thread at a time
+	public Appender newAppender() {
+		Appender appender = new Appender();
+		appenders.add(appender);
+		return appender;
+	}
+
+	// Appender of the calling thread
+	public Appender appender() {
+		return threadAppender.get();
+	}
+
+	public HouseBatchBuilder append(int floors, int bedrooms, int bathrooms, boolean hasGarage,
+			boolean hasSwimmingPool) {
+		appender().append(floors, bedrooms, bathrooms, hasGarage, hasSwimmingPool);
+		return this;
+	}
+
+	// Merges all appenders into one table; call after every appending thread has finished
+	public HouseColumns build() {
+		int total = 0;
+		for (Appender appender : appenders) {
+			total += appender.columns.size;
+		}
+		HouseColumns result = new HouseColumns(Math.max(total, 1));
+		for (Appender appender : appenders) {
+			result.appendAll(appender.columns);
+		}
+		return result;
+	}
+}
+
+public class HouseBatchExample {
+
+	public static void main(String[] args) throws InterruptedException {
+		HouseBatchBuilder batch = new HouseBatchBuilder();
+
+		// Several ingest threads append in parallel, each through its own appender
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int offset = t;
+			threads[t] = new Thread(() -> {
+				HouseBatchBuilder.Appender appender = batch.appender();
+				for (int i = 0; i < 250_000; i++) {
+					appender.append(1 + offset, 1 + i % 5, 1 + i % 3, i % 2 == 0, i % 10 == 0);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		HouseColumns houses = batch.build();
+		HouseView view = houses.view();
+		System.out.println("Rows: " + houses.size());
+		System.out.println("First row: " + view.moveTo(0));
+
+		// Export and re-import without creating a House per row
+		ByteBuffer buffer = ByteBuffer.allocateDirect(houses.byteSize());
+		houses.writeTo(buffer);
+		buffer.flip();
+		HouseColumns imported = HouseColumns.readFrom(buffer);
+		System.out.println("Imported rows: " + imported.size() + ", last row: "
+				+ imported.view().moveTo(imported.size() - 1));
+	}
+}
@@ -0,0 +1,232 @@
+package creational;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A packed house stores all five fields of a House in a single long: 20 bits
+ * each for floors, bedrooms and bathrooms and one bit each for the garage and
+ * the swimming pool. It is an immutable value with equals and hashCode, so
+ * identical configurations - for example everything HouseDirector.construct()
+ * produces - can be interned and shared through a concurrent weak cache.
+ */
+//House encoded into one long
+final class PackedHouse {
+	static final int MAX_COUNT = (1 << 20) - 1;
+
+	private static final int BEDROOMS_SHIFT = 20;
+	private static final int BATHROOMS_SHIFT = 40;
+	private static final long GARAGE_BIT = 1L << 60;
+	private static final long POOL_BIT = 1L << 61;
+
+	private static final PackedHouseInterner INTERNER = new PackedHouseInterner();
+
+	private final long bits;
+
+	private PackedHouse(long bits) {
+		this.bits = bits;
+	}
+
+	public static PackedHouse of(int floors, int bedrooms, int bathrooms, boolean hasGarage,
+			boolean hasSwimmingPool) {
+		return new PackedHouse(pack(floors, bedrooms, bathrooms, hasGarage, hasSwimmingPool));
+	}
+
+	public static PackedHouse fromBits(long bits) {
+		if ((bits & ~(POOL_BIT | GARAGE_BIT | ((1L << 60) - 1))) != 0) {
+			throw new IllegalArgumentException("Not a packed house: " + Long.toHexString(bits));
+		}
+		return new PackedHouse(bits);
+	}
+
+	static long pack(int floors, int bedrooms, int bathrooms, boolean hasGarage, boolean hasSwimmingPool) {
+		return checkCount("floors", floors) | checkCount("bedrooms", bedrooms) << BEDROOMS_SHIFT
+				| checkCount("bathrooms", bathrooms) << BATHROOMS_SHIFT | (hasGarage ? GARAGE_BIT : 0)
+				| (hasSwimmingPool ? POOL_BIT : 0);
+	}
+
+	private static long checkCount(String name, int value) {
+		if (value < 0 || value > MAX_COUNT) {
+			throw new IllegalArgumentException(name + " must be between 0 and " + MAX_COUNT + ": " + value);
+		}
+		return value;
+	}
+
+	// Returns the canonical instance of this configuration
+	public PackedHouse intern() {
+		return INTERNER.intern(this);
+	}
+
+	public long getBits() {
+		return bits;
+	}
+
+	public int getFloors() {
+		return (int) (bits & MAX_COUNT);
+	}
+
+	public int getBedrooms() {
+		return (int) (bits >>> BEDROOMS_SHIFT & MAX_COUNT);
+	}
+
+	public int getBathrooms() {
+		return (int) (bits >>> BATHROOMS_SHIFT & MAX_COUNT);
+	}
+
+	public boolean hasGarage() {
+		return (bits & GARAGE_BIT) != 0;
+	}
+
+	public boolean hasSwimmingPool() {
+		return (bits & POOL_BIT) != 0;
+	}
+
+	public House toHouse() {
+		return new House(getFloors(), getBedrooms(), getBathrooms(), hasGarage(), hasSwimmingPool());
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof PackedHouse && ((PackedHouse) o).bits == bits;
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(bits);
+	}
+
+	@Override
+	public String toString() {
+		return "House{" + "floors=" + getFloors() + ", bedrooms=" + getBedrooms() + ", bathrooms=" + getBathrooms()
+				+ ", hasGarage=" + hasGarage() + ", hasSwimmingPool=" + hasSwimmingPool() + '}';
+	}
+}
+
+//Concurrent weak cache of canonical packed houses
+class PackedHouseInterner {
+
+	private static final class Entry extends WeakReference<PackedHouse> {
+		final long bits;
+
+		Entry(PackedHouse house, ReferenceQueue<PackedHouse> queue) {
+			super(house, queue);
+			this.bits = house.getBits();
+		}
+	}
+
+	private final ConcurrentHashMap<Long, Entry> cache = new ConcurrentHashMap<>();
+	private final ReferenceQueue<PackedHouse> queue = new ReferenceQueue<>();
+
+	public PackedHouse intern(PackedHouse house) {
+		expungeStaleEntries();
+		Long key = house.getBits();
+		while (true) {
+			Entry entry = cache.get(key);
+			if (entry != null) {
+				PackedHouse canonical = entry.get();
+				if (canonical != null) {
+					return canonical;
+				}
+				// Collected but not yet expunged: replace the dead entry
+				if (cache.replace(key, entry, new Entry(house, queue))) {
+					return house;
+				}
+			} else if (cache.putIfAbsent(key, new Entry(house, queue)) == null) {
+				return house;
+			}
+		}
+	}
+
+	public int size() {
+		expungeStaleEntries();
+		return cache.size();
+	}
+
+	private void expungeStaleEntries() {
+		Entry stale;
+		while ((stale = (Entry) queue.poll()) != null) {
+			cache.remove(stale.bits, stale);
+		}
+	}
+}
+
+//Measures the heap used by House objects against packed and interned houses
+class PackedHouseFootprint {
+
+	static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	// Mostly duplicates, as produced by a director, plus some variety
+	static HouseBuilder row(ConcreteHouseBuilder builder, int i) {
+		return builder.setFloors(1 + i % 3).setBedrooms(1 + i % 5).setBathrooms(1 + i % 2).setHasGarage(i % 7 != 0)
+				.setHasSwimmingPool(i % 11 == 0);
+	}
+
+	static void run(int count) {
+		ConcreteHouseBuilder builder = new ConcreteHouseBuilder();
+
+		long before = usedHeap();
+		House[] houses = new House[count];
+		for (int i = 0; i < count; i++) {
+			houses[i] = row(builder, i).build();
+		}
+		report("House objects", count, usedHeap() - before);
+		houses = null;
+
+		before = usedHeap();
+		PackedHouse[] packed = new PackedHouse[count];
+		for (int i = 0; i < count; i++) {
+			row(builder, i);
+			packed[i] = builder.buildPacked();
+		}
+		report("PackedHouse objects", count, usedHeap() - before);
+		packed = null;
+
+		before = usedHeap();
+		PackedHouse[] interned = new PackedHouse[count];
+		for (int i = 0; i < count; i++) {
+			row(builder, i);
+			interned[i] = builder.buildInterned();
+		}
+		report("Interned PackedHouse", count, usedHeap() - before);
+		interned = null;
+
+		before = usedHeap();
+		long[] bits = new long[count];
+		for (int i = 0; i < count; i++) {
+			row(builder, i);
+			bits[i] = builder.buildPacked().getBits();
+		}
+		report("long[] of packed bits", count, usedHeap() - before);
+	}
+
+	static void report(String name, int count, long bytes) {
+		System.out.printf("%-24s %,12d bytes %6.1f bytes/house%n", name, bytes, (double) bytes / count);
+	}
+}
+
+public class PackedHouseExample {
+
+	public static void main(String[] args) {
+		ConcreteHouseBuilder builder = new ConcreteHouseBuilder();
+		new HouseDirector(builder).construct();
+		PackedHouse first = builder.buildInterned();
+		new HouseDirector(builder).construct();
+		PackedHouse second = builder.buildInterned();
+
+		System.out.println(first);
+		System.out.println("Identical houses are shared: " + (first == second));
+
+		// Run with -Xmx4g for the 10 million house dataset
+		if (args.length > 0 && args[0].equals("--footprint")) {
+			int count = args.length > 1 ? Integer.parseInt(args[1]) : 10_000_000;
+			PackedHouseFootprint.run(count);
+		}
+	}
+}
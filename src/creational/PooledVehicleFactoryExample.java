@@ -0,0 +1,352 @@
+package creational;
+
+import java.lang.ref.Cleaner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pooling factory decorates any VehicleFactory and recycles the vehicles it
+ * hands out instead of allocating a new one on every call. Callers give a
+ * vehicle back with release() once they are done with it. Released vehicles
+ * first go to a small per-thread cache and then to a lock-free bounded queue
+ * shared by all threads. At most maxSize vehicles are pooled in total,
+ * per-thread caches included; anything beyond that is dropped and left to the
+ * garbage collector. Only vehicles of a class the delegate has produced are
+ * accepted, and releasing a vehicle that is already pooled fails instead of
+ * handing the same instance to two callers later. Pooled vehicles are tracked
+ * by identity in a fixed-size lock-free table, whatever their equals() does,
+ * so recycling a vehicle neither allocates nor takes a lock.
+ */
+//Pooling decorator around an existing VehicleFactory
+class PooledVehicleFactory implements VehicleFactory {
+	// Returns the vehicles cached by threads that have died
+	private static final Cleaner CLEANER = Cleaner.create();
+
+	// Small LIFO cache owned by one thread, no synchronization needed
+	private static final class ThreadCache {
+		final Vehicle[] vehicles;
+		int size;
+
+		ThreadCache(int capacity) {
+			vehicles = new Vehicle[capacity];
+		}
+	}
+
+	// Releases the vehicles a dead thread had cached; holds no reference to the factory
+	private static final class CacheCleanup implements Runnable {
+		private final Vehicle[] vehicles;
+		private final IdleSet idle;
+		private final AtomicInteger pooled;
+
+		CacheCleanup(Vehicle[] vehicles, IdleSet idle, AtomicInteger pooled) {
+			this.vehicles = vehicles;
+			this.idle = idle;
+			this.pooled = pooled;
+		}
+
+		@Override
+		public void run() {
+			for (Vehicle vehicle : vehicles) {
+				if (vehicle != null && idle.remove(vehicle)) {
+					pooled.decrementAndGet();
+				}
+			}
+		}
+	}
+
+	// Identity set of the pooled vehicles. A vehicle may only occupy one of the NEIGHBORHOOD
+	// slots starting at its hash slot, so a lookup never probes further and removal just
+	// clears the slot. The table has four slots per pooled vehicle, so a full neighborhood
+	// is very unlikely; such a vehicle is dropped like any other overflow.
+	private static final class IdleSet {
+		static final int ADDED = 0;
+		static final int DUPLICATE = 1;
+		static final int FULL = 2;
+		private static final int NEIGHBORHOOD = 16;
+
+		private final AtomicReferenceArray<Vehicle> slots;
+		private final int mask;
+
+		IdleSet(int capacity) {
+			int size = Integer.highestOneBit(Math.max(NEIGHBORHOOD, Math.min(capacity, 1 << 26) * 4) - 1) << 1;
+			slots = new AtomicReferenceArray<>(size);
+			mask = size - 1;
+		}
+
+		private int home(Vehicle vehicle) {
+			return (System.identityHashCode(vehicle) * 0x9E3779B9) & mask;
+		}
+
+		int add(Vehicle vehicle) {
+			int home = home(vehicle);
+			while (true) {
+				int free = -1;
+				for (int i = 0; i < NEIGHBORHOOD; i++) {
+					Vehicle current = slots.get((home + i) & mask);
+					if (current == vehicle) {
+						return DUPLICATE;
+					}
+					if (current == null && free < 0) {
+						free = (home + i) & mask;
+					}
+				}
+				if (free < 0) {
+					return FULL;
+				}
+				if (slots.compareAndSet(free, null, vehicle)) {
+					return resolveRace(vehicle, home, free);
+				}
+			}
+		}
+
+		// Two racing releases of one vehicle may both insert it; the one nearer its hash slot stays
+		private int resolveRace(Vehicle vehicle, int home, int inserted) {
+			int insertedOffset = (inserted - home) & mask;
+			for (int i = 0; i < NEIGHBORHOOD; i++) {
+				int slot = (home + i) & mask;
+				if (slot != inserted && slots.get(slot) == vehicle && i < insertedOffset) {
+					slots.compareAndSet(inserted, vehicle, null);
+					return DUPLICATE;
+				}
+			}
+			return ADDED;
+		}
+
+		boolean remove(Vehicle vehicle) {
+			int home = home(vehicle);
+			for (int i = 0; i < NEIGHBORHOOD; i++) {
+				if (slots.compareAndSet((home + i) & mask, vehicle, null)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	// Bounded multi-producer, multi-consumer array queue; each slot carries a sequence number
+	private static final class SharedQueue {
+		private final AtomicReferenceArray<Vehicle> items;
+		private final AtomicLongArray sequences;
+		private final int mask;
+		private final AtomicLong head = new AtomicLong();
+		private final AtomicLong tail = new AtomicLong();
+
+		SharedQueue(int capacity) {
+			int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+			items = new AtomicReferenceArray<>(size);
+			sequences = new AtomicLongArray(size);
+			for (int i = 0; i < size; i++) {
+				sequences.set(i, i);
+			}
+			mask = size - 1;
+		}
+
+		boolean offer(Vehicle vehicle) {
+			long position = tail.get();
+			while (true) {
+				int slot = (int) (position & mask);
+				long difference = sequences.get(slot) - position;
+				if (difference == 0) {
+					if (tail.compareAndSet(position, position + 1)) {
+						items.set(slot, vehicle);
+						sequences.set(slot, position + 1);
+						return true;
+					}
+					position = tail.get();
+				} else if (difference < 0) {
+					return false;
+				} else {
+					position = tail.get();
+				}
+			}
+		}
+
+		Vehicle poll() {
+			long position = head.get();
+			while (true) {
+				int slot = (int) (position & mask);
+				long difference = sequences.get(slot) - (position + 1);
+				if (difference == 0) {
+					if (head.compareAndSet(position, position + 1)) {
+						Vehicle vehicle = items.get(slot);
+						items.set(slot, null);
+						sequences.set(slot, position + mask + 1);
+						return vehicle;
+					}
+					position = head.get();
+				} else if (difference < 0) {
+					return null;
+				} else {
+					position = head.get();
+				}
+			}
+		}
+	}
+
+	private final VehicleFactory delegate;
+	private final int maxSize;
+	private final SharedQueue sharedQueue;
+	private final ThreadLocal<ThreadCache> threadCaches;
+	// Vehicles currently pooled, wherever they are kept
+	private final AtomicInteger pooled = new AtomicInteger();
+	private final IdleSet idle;
+	private final Set<Class<?>> producedTypes = ConcurrentHashMap.newKeySet();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder overflows = new LongAdder();
+
+	public PooledVehicleFactory(VehicleFactory delegate, int maxSize) {
+		this(delegate, maxSize, 8);
+	}
+
+	public PooledVehicleFactory(VehicleFactory delegate, int maxSize, int threadCacheSize) {
+		if (maxSize < 0 || threadCacheSize < 0) {
+			throw new IllegalArgumentException("Pool sizes must not be negative");
+		}
+		this.delegate = delegate;
+		this.maxSize = maxSize;
+		this.sharedQueue = new SharedQueue(maxSize);
+		this.idle = new IdleSet(maxSize);
+		// Copied into locals: the supplier and the cleanup must not keep the factory reachable
+		int cacheCapacity = Math.min(threadCacheSize, maxSize);
+		IdleSet idleSet = idle;
+		AtomicInteger pooledCount = pooled;
+		this.threadCaches = ThreadLocal.withInitial(() -> newThreadCache(cacheCapacity, idleSet, pooledCount));
+	}
+
+	private static ThreadCache newThreadCache(int capacity, IdleSet idle, AtomicInteger pooled) {
+		ThreadCache cache = new ThreadCache(capacity);
+		CLEANER.register(cache, new CacheCleanup(cache.vehicles, idle, pooled));
+		return cache;
+	}
+
+	@Override
+	public Vehicle createVehicle() {
+		ThreadCache cache = threadCaches.get();
+		Vehicle vehicle;
+		if (cache.size > 0) {
+			vehicle = cache.vehicles[--cache.size];
+			cache.vehicles[cache.size] = null;
+		} else {
+			vehicle = sharedQueue.poll();
+		}
+		if (vehicle != null) {
+			idle.remove(vehicle);
+			pooled.decrementAndGet();
+			hits.increment();
+			return vehicle;
+		}
+		misses.increment();
+		vehicle = delegate.createVehicle();
+		Class<?> type = vehicle.getClass();
+		if (!producedTypes.contains(type)) {
+			producedTypes.add(type);
+		}
+		return vehicle;
+	}
+
+	// Returns a vehicle to the pool; the caller must not use it afterwards
+	public void release(Vehicle vehicle) {
+		if (vehicle == null) {
+			return;
+		}
+		if (!producedTypes.contains(vehicle.getClass())) {
+			throw new IllegalArgumentException(
+					"Vehicle was not created by this pool: " + vehicle.getClass().getName());
+		}
+		int marked = idle.add(vehicle);
+		if (marked == IdleSet.DUPLICATE) {
+			throw new IllegalStateException("Vehicle released twice");
+		}
+		if (marked == IdleSet.FULL) {
+			overflows.increment();
+			return;
+		}
+		if (pooled.incrementAndGet() > maxSize) {
+			pooled.decrementAndGet();
+			idle.remove(vehicle);
+			overflows.increment();
+			return;
+		}
+		ThreadCache cache = threadCaches.get();
+		if (cache.size < cache.vehicles.length) {
+			cache.vehicles[cache.size++] = vehicle;
+		} else if (!sharedQueue.offer(vehicle)) {
+			// Cannot happen while the queue holds at least maxSize vehicles
+			pooled.decrementAndGet();
+			idle.remove(vehicle);
+			overflows.increment();
+		}
+	}
+
+	public int getPooled() {
+		return pooled.get();
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getOverflows() {
+		return overflows.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "PooledVehicleFactory{" + "hits=" + getHits() + ", misses=" + getMisses() + ", overflows="
+				+ getOverflows() + ", pooled=" + getPooled() + '}';
+	}
+}
+
+public class PooledVehicleFactoryExample {
+
+	public static void main(String[] args) {
+		// Any existing factory can be pooled without changes
+		PooledVehicleFactory carFactory = new PooledVehicleFactory(new CarFactory(), 64);
+
+		Vehicle car = carFactory.createVehicle();
+		car.drive();
+		carFactory.release(car);
+
+		// The released car is handed out again instead of allocating a new one
+		Vehicle reused = carFactory.createVehicle();
+		System.out.println("Reused the same car: " + (car == reused));
+		carFactory.release(reused);
+
+		PooledVehicleFactory truckFactory = new PooledVehicleFactory(new TruckFactory(), 2, 1);
+		Vehicle[] trucks = new Vehicle[5];
+		for (int i = 0; i < trucks.length; i++) {
+			trucks[i] = truckFactory.createVehicle();
+		}
+		for (Vehicle truck : trucks) {
+			truckFactory.release(truck);
+		}
+
+		// A truck cannot end up in the car pool, and a car cannot be pooled twice
+		try {
+			carFactory.release(trucks[0]);
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+		}
+		Vehicle pooledCar = carFactory.createVehicle();
+		carFactory.release(pooledCar);
+		try {
+			carFactory.release(pooledCar);
+		} catch (IllegalStateException e) {
+			System.out.println(e.getMessage());
+		}
+
+		System.out.println(carFactory);
+		System.out.println(truckFactory);
+	}
+}
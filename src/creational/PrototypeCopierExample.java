@@ -0,0 +1,640 @@
+package creational;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Currency;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+import benchmark.Blackhole;
+
+/**
+ * Object.clone() only makes a shallow copy: nested objects and arrays stay
+ * shared between the prototype and its clones. The prototype copier makes deep
+ * copies of whole object graphs instead. For every class it builds a
+ * specialized copier once, out of method handles, and afterwards copies
+ * instances of that class without any reflection. Cycles and shared references
+ * are preserved, arrays are copied element by element, and fields or types
+ * marked with @Immutable are shared with the copy rather than copied.
+ *
+ * JDK classes cannot be opened for field access, so they are copied through
+ * their public API instead:
+ * - The standard collections and maps are copied into a new instance of the
+ *   same class, with the same comparator, and their elements are deep copied.
+ *   A LinkedHashMap copy always uses insertion order.
+ * - Unmodifiable and immutable collections, such as List.of() and
+ *   Collections.unmodifiableList(), become unmodifiable copies.
+ * - Arrays.asList() lists become fixed-size copies.
+ * - Value types such as String, the boxed primitives, java.time, UUID and URI
+ *   are shared.
+ * - Other Cloneable JDK types such as Date or EnumSet are copied with their
+ *   public clone(), which is shallow.
+ * Any other JDK type is rejected with an IllegalArgumentException; fields
+ * holding one must be marked @Immutable. Elements and keys are inserted only
+ * after the whole graph has been copied, and every container is filled after
+ * the containers it holds, so hash codes are computed from complete copies.
+ * Hash codes of other objects that depend on collections held in their fields
+ * may still be computed before those collections are filled.
+ */
+//Marks a field or a type whose values can be shared between copies
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.FIELD, ElementType.TYPE })
+@interface Immutable {
+}
+
+//Deep copy engine with a per-class copier built once
+final class PrototypeCopier {
+	private static final MethodType ALLOCATE_TYPE = MethodType.methodType(Object.class);
+	private static final MethodType FIELD_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+	private static final MethodType GET_TYPE = MethodType.methodType(Object.class, Object.class);
+
+	private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<>(Arrays.asList(String.class, Boolean.class,
+			Character.class, Byte.class, Short.class, Integer.class, Long.class, Float.class, Double.class,
+			BigInteger.class, BigDecimal.class, Class.class, UUID.class, URI.class, Pattern.class, Locale.class,
+			Currency.class));
+
+	private static final Class<?> ARRAYS_AS_LIST = Arrays.asList().getClass();
+
+	// Empty copies of the standard mutable collections and maps, keyed by exact class
+	private static final Map<Class<?>, Function<Object, Object>> CONTAINERS = new HashMap<>();
+
+	static {
+		CONTAINERS.put(ArrayList.class, source -> new ArrayList<>(((Collection<?>) source).size()));
+		CONTAINERS.put(LinkedList.class, source -> new LinkedList<>());
+		CONTAINERS.put(Vector.class, source -> new Vector<>(((Collection<?>) source).size()));
+		CONTAINERS.put(CopyOnWriteArrayList.class, source -> new CopyOnWriteArrayList<>());
+		CONTAINERS.put(ArrayDeque.class, source -> new ArrayDeque<>(((Collection<?>) source).size()));
+		CONTAINERS.put(ConcurrentLinkedQueue.class, source -> new ConcurrentLinkedQueue<>());
+		CONTAINERS.put(ConcurrentLinkedDeque.class, source -> new ConcurrentLinkedDeque<>());
+		CONTAINERS.put(PriorityQueue.class, source -> new PriorityQueue<>(
+				Math.max(1, ((PriorityQueue<?>) source).size()), comparatorOf((PriorityQueue<?>) source)));
+		CONTAINERS.put(HashSet.class, source -> new HashSet<>());
+		CONTAINERS.put(LinkedHashSet.class, source -> new LinkedHashSet<>());
+		CONTAINERS.put(TreeSet.class, source -> new TreeSet<>(comparatorOf((SortedSet<?>) source)));
+		CONTAINERS.put(ConcurrentSkipListSet.class,
+				source -> new ConcurrentSkipListSet<>(comparatorOf((SortedSet<?>) source)));
+		CONTAINERS.put(HashMap.class, source -> new HashMap<>());
+		CONTAINERS.put(LinkedHashMap.class, source -> new LinkedHashMap<>());
+		CONTAINERS.put(Hashtable.class, source -> new Hashtable<>());
+		CONTAINERS.put(IdentityHashMap.class, source -> new IdentityHashMap<>());
+		CONTAINERS.put(ConcurrentHashMap.class, source -> new ConcurrentHashMap<>());
+		CONTAINERS.put(TreeMap.class, source -> new TreeMap<>(comparatorOf((SortedMap<?, ?>) source)));
+		CONTAINERS.put(ConcurrentSkipListMap.class,
+				source -> new ConcurrentSkipListMap<>(comparatorOf((SortedMap<?, ?>) source)));
+		CONTAINERS.put(EnumMap.class, source -> enumMapCopy(source));
+	}
+
+	private enum Kind {
+		IMMUTABLE, FIELDS, CONTAINER, CLONE
+	}
+
+	// Copier of one class, built on first use
+	private static final class ClassCopier {
+		final Kind kind;
+		final MethodHandle allocator;
+		// (copy, source) -> void, copies all primitive and shared fields at once
+		final MethodHandle shallowFields;
+		// (source) -> Object and (copy, value) -> void for fields that are copied deeply
+		final MethodHandle[] deepGetters;
+		final MethodHandle[] deepSetters;
+		// Containers: source -> empty collection or map that receives the copied elements
+		final Function<Object, Object> emptyContainer;
+		// Containers: filled collection or map -> copy handed out, e.g. an unmodifiable view of it
+		final Function<Object, Object> view;
+		// Cloneable JDK types: (source) -> Object
+		final MethodHandle cloner;
+
+		ClassCopier(Kind kind, MethodHandle allocator, MethodHandle shallowFields, MethodHandle[] deepGetters,
+				MethodHandle[] deepSetters, Function<Object, Object> emptyContainer, Function<Object, Object> view,
+				MethodHandle cloner) {
+			this.kind = kind;
+			this.allocator = allocator;
+			this.shallowFields = shallowFields;
+			this.deepGetters = deepGetters;
+			this.deepSetters = deepSetters;
+			this.emptyContainer = emptyContainer;
+			this.view = view;
+			this.cloner = cloner;
+		}
+
+		static ClassCopier immutable() {
+			return new ClassCopier(Kind.IMMUTABLE, null, null, null, null, null, null, null);
+		}
+
+		static ClassCopier container(Function<Object, Object> emptyContainer, Function<Object, Object> view) {
+			return new ClassCopier(Kind.CONTAINER, null, null, null, null, emptyContainer, view, null);
+		}
+	}
+
+	private static final ClassValue<ClassCopier> COPIERS = new ClassValue<ClassCopier>() {
+		@Override
+		protected ClassCopier computeValue(Class<?> type) {
+			return buildCopier(type);
+		}
+	};
+
+	private PrototypeCopier() {
+	}
+
+	// Returns a deep copy of the object graph reachable from source
+	public static <T> T copy(T source) {
+		if (source == null) {
+			return null;
+		}
+		IdentityHashMap<Object, Object> copies = new IdentityHashMap<>();
+		// Pairs of (source, copy) whose references still have to be copied
+		ArrayDeque<Object> pending = new ArrayDeque<>();
+		// Containers to fill once the graph is complete, keyed by the copy handed out
+		IdentityHashMap<Object, Fill> fills = new IdentityHashMap<>();
+		@SuppressWarnings("unchecked")
+		T result = (T) resolve(source, copies, pending);
+		try {
+			while (!pending.isEmpty()) {
+				Object original = pending.poll();
+				Object copy = pending.poll();
+				if (copy instanceof Object[]) {
+					Object[] elements = (Object[]) copy;
+					for (int i = 0; i < elements.length; i++) {
+						elements[i] = resolve(elements[i], copies, pending);
+					}
+				} else if (original instanceof Map) {
+					Map<?, ?> map = (Map<?, ?>) original;
+					Object[] entries = new Object[map.size() * 2];
+					int i = 0;
+					for (Map.Entry<?, ?> entry : map.entrySet()) {
+						entries[i++] = resolve(entry.getKey(), copies, pending);
+						entries[i++] = resolve(entry.getValue(), copies, pending);
+					}
+					fills.put(copies.get(original), new Fill(copy, entries));
+				} else if (original instanceof Collection) {
+					Object[] elements = ((Collection<?>) original).toArray();
+					for (int i = 0; i < elements.length; i++) {
+						elements[i] = resolve(elements[i], copies, pending);
+					}
+					fills.put(copies.get(original), new Fill(copy, elements));
+				} else {
+					ClassCopier copier = COPIERS.get(original.getClass());
+					for (int i = 0; i < copier.deepGetters.length; i++) {
+						Object value = (Object) copier.deepGetters[i].invokeExact(original);
+						copier.deepSetters[i].invokeExact(copy, resolve(value, copies, pending));
+					}
+				}
+			}
+		} catch (Throwable e) {
+			throw new IllegalStateException("Copy of " + source.getClass().getName() + " failed", e);
+		}
+		fillAll(fills);
+		return result;
+	}
+
+	// A container waiting for its copied elements
+	private static final class Fill {
+		final Object container;
+		final Object[] elements;
+		boolean queued;
+		boolean expanded;
+
+		Fill(Object container, Object[] elements) {
+			this.container = container;
+			this.elements = elements;
+		}
+	}
+
+	// Fills every container after the containers among its elements, so their hash codes are final
+	private static void fillAll(IdentityHashMap<Object, Fill> fills) {
+		ArrayDeque<Fill> stack = new ArrayDeque<>();
+		for (Fill root : fills.values()) {
+			if (root.queued) {
+				continue;
+			}
+			root.queued = true;
+			stack.push(root);
+			while (!stack.isEmpty()) {
+				Fill top = stack.peek();
+				if (top.expanded) {
+					stack.pop();
+					fill(top.container, top.elements);
+					continue;
+				}
+				top.expanded = true;
+				for (Object element : top.elements) {
+					Fill inner = element == null ? null : fills.get(element);
+					if (inner != null && !inner.queued) {
+						inner.queued = true;
+						stack.push(inner);
+					}
+				}
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void fill(Object container, Object[] elements) {
+		if (container instanceof Map) {
+			Map<Object, Object> map = (Map<Object, Object>) container;
+			for (int i = 0; i < elements.length; i += 2) {
+				map.put(elements[i], elements[i + 1]);
+			}
+		} else if (container.getClass() == ARRAYS_AS_LIST) {
+			List<Object> list = (List<Object>) container;
+			for (int i = 0; i < elements.length; i++) {
+				list.set(i, elements[i]);
+			}
+		} else {
+			Collections.addAll((Collection<Object>) container, elements);
+		}
+	}
+
+	// Returns the copy of value, allocating it and scheduling its fields if needed
+	private static Object resolve(Object value, IdentityHashMap<Object, Object> copies, ArrayDeque<Object> pending) {
+		if (value == null) {
+			return null;
+		}
+		Class<?> type = value.getClass();
+		if (type.isArray()) {
+			Object existing = copies.get(value);
+			if (existing != null) {
+				return existing;
+			}
+			int length = Array.getLength(value);
+			Object copy = Array.newInstance(type.getComponentType(), length);
+			System.arraycopy(value, 0, copy, 0, length);
+			copies.put(value, copy);
+			if (!type.getComponentType().isPrimitive()) {
+				pending.add(value);
+				pending.add(copy);
+			}
+			return copy;
+		}
+		ClassCopier copier = COPIERS.get(type);
+		if (copier.kind == Kind.IMMUTABLE) {
+			return value;
+		}
+		Object existing = copies.get(value);
+		if (existing != null) {
+			return existing;
+		}
+		try {
+			if (copier.kind == Kind.CONTAINER) {
+				Object container = copier.emptyContainer.apply(value);
+				Object copy = copier.view.apply(container);
+				copies.put(value, copy);
+				pending.add(value);
+				pending.add(container);
+				return copy;
+			}
+			if (copier.kind == Kind.CLONE) {
+				Object copy = (Object) copier.cloner.invokeExact(value);
+				copies.put(value, copy);
+				return copy;
+			}
+			Object copy = (Object) copier.allocator.invokeExact();
+			copier.shallowFields.invokeExact(copy, value);
+			copies.put(value, copy);
+			if (copier.deepGetters.length > 0) {
+				pending.add(value);
+				pending.add(copy);
+			}
+			return copy;
+		} catch (Throwable e) {
+			throw new IllegalStateException("Cannot copy " + type.getName(), e);
+		}
+	}
+
+	static boolean isImmutableType(Class<?> type) {
+		return type.isPrimitive() || type.isEnum() || IMMUTABLE_TYPES.contains(type)
+				|| (type.getPackageName().equals("java.time") && Modifier.isFinal(type.getModifiers()))
+				|| type.isAnnotationPresent(Immutable.class);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> Comparator<T> comparatorOf(Object sorted) {
+		if (sorted instanceof SortedSet) {
+			return (Comparator<T>) ((SortedSet<?>) sorted).comparator();
+		}
+		if (sorted instanceof SortedMap) {
+			return (Comparator<T>) ((SortedMap<?, ?>) sorted).comparator();
+		}
+		return (Comparator<T>) ((PriorityQueue<?>) sorted).comparator();
+	}
+
+	// EnumMap has no public way to read its key type, so the copy starts from the source's keys
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Object enumMapCopy(Object source) {
+		EnumMap copy = new EnumMap((EnumMap) source);
+		copy.replaceAll((key, value) -> null);
+		return copy;
+	}
+
+	private static ClassCopier buildCopier(Class<?> type) {
+		if (isImmutableType(type) || (type.getSuperclass() != null && type.getSuperclass().isEnum())) {
+			return ClassCopier.immutable();
+		}
+		Function<Object, Object> container = CONTAINERS.get(type);
+		if (container != null) {
+			return ClassCopier.container(container, Function.identity());
+		}
+		if (type.getModule() == Object.class.getModule()) {
+			return buildJdkCopier(type);
+		}
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+			MethodHandle allocator = lookup.findConstructor(type, MethodType.methodType(void.class))
+					.asType(ALLOCATE_TYPE);
+			MethodHandle shallowFields = MethodHandles.empty(FIELD_TYPE);
+			List<MethodHandle> deepGetters = new ArrayList<>();
+			List<MethodHandle> deepSetters = new ArrayList<>();
+
+			for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+				if (c.getModule() == Object.class.getModule()) {
+					throw new IllegalArgumentException("Subclasses of JDK class " + c.getName() + " are not supported");
+				}
+				MethodHandles.Lookup fieldLookup = MethodHandles.privateLookupIn(c, MethodHandles.lookup());
+				for (Field field : c.getDeclaredFields()) {
+					if (Modifier.isStatic(field.getModifiers())) {
+						continue;
+					}
+					field.setAccessible(true);
+					MethodHandle getter = fieldLookup.unreflectGetter(field);
+					MethodHandle setter = fieldLookup.unreflectSetter(field);
+					if (field.isAnnotationPresent(Immutable.class) || isImmutableType(field.getType())) {
+						// copy.field = source.field, without boxing primitives
+						MethodHandle copyField = MethodHandles.filterArguments(setter, 1, getter).asType(FIELD_TYPE);
+						shallowFields = MethodHandles.foldArguments(copyField, shallowFields);
+					} else {
+						deepGetters.add(getter.asType(GET_TYPE));
+						deepSetters.add(setter.asType(FIELD_TYPE));
+					}
+				}
+			}
+			return new ClassCopier(Kind.FIELDS, allocator, shallowFields, deepGetters.toArray(new MethodHandle[0]),
+					deepSetters.toArray(new MethodHandle[0]), null, null, null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			throw new IllegalArgumentException("Cannot build copier for " + type.getName()
+					+ "; it needs a no-arg constructor and accessible fields, or must be marked @Immutable", e);
+		}
+	}
+
+	// JDK classes are copied through their public API only
+	private static ClassCopier buildJdkCopier(Class<?> type) {
+		String name = type.getName();
+		boolean readOnly = name.startsWith("java.util.ImmutableCollections$")
+				|| name.startsWith("java.util.Collections$Unmodifiable");
+		if (readOnly && SortedMap.class.isAssignableFrom(type)) {
+			return ClassCopier.container(source -> new TreeMap<>(comparatorOf(source)),
+					map -> Collections.unmodifiableSortedMap((SortedMap<?, ?>) map));
+		}
+		if (readOnly && Map.class.isAssignableFrom(type)) {
+			return ClassCopier.container(source -> new LinkedHashMap<>(),
+					map -> Collections.unmodifiableMap((Map<?, ?>) map));
+		}
+		if (readOnly && SortedSet.class.isAssignableFrom(type)) {
+			return ClassCopier.container(source -> new TreeSet<>(comparatorOf(source)),
+					set -> Collections.unmodifiableSortedSet((SortedSet<?>) set));
+		}
+		if (readOnly && Set.class.isAssignableFrom(type)) {
+			return ClassCopier.container(source -> new LinkedHashSet<>(),
+					set -> Collections.unmodifiableSet((Set<?>) set));
+		}
+		if (readOnly && List.class.isAssignableFrom(type)) {
+			return ClassCopier.container(source -> new ArrayList<>(((Collection<?>) source).size()),
+					list -> Collections.unmodifiableList((List<?>) list));
+		}
+		if (readOnly && Collection.class.isAssignableFrom(type)) {
+			return ClassCopier.container(source -> new ArrayList<>(((Collection<?>) source).size()),
+					collection -> Collections.unmodifiableCollection((Collection<?>) collection));
+		}
+		if (type == ARRAYS_AS_LIST) {
+			return ClassCopier.container(source -> Arrays.asList(new Object[((List<?>) source).size()]),
+					Function.identity());
+		}
+		if (Cloneable.class.isAssignableFrom(type) && !Collection.class.isAssignableFrom(type)
+				|| EnumSet.class.isAssignableFrom(type)) {
+			MethodHandle cloner = publicClone(type);
+			if (cloner != null) {
+				return new ClassCopier(Kind.CLONE, null, null, null, null, null, null, cloner);
+			}
+		}
+		throw new IllegalArgumentException("No copy strategy for JDK class " + name
+				+ "; mark the field holding it @Immutable or use one of the standard collections");
+	}
+
+	// Public clone() of the nearest exported public class, as (Object) -> Object
+	private static MethodHandle publicClone(Class<?> type) {
+		for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+			if (Modifier.isPublic(c.getModifiers()) && c.getModule().isExported(c.getPackageName())) {
+				try {
+					Method clone = c.getMethod("clone");
+					if (clone.getDeclaringClass() != Object.class) {
+						return MethodHandles.publicLookup().unreflect(clone).asType(GET_TYPE);
+					}
+				} catch (ReflectiveOperationException e) {
+					return null;
+				}
+			}
+		}
+		return null;
+	}
+}
+
+//Prototype holding standard collections and JDK value types
+class PrototypeCatalog {
+	private List<PrototypeGraphNode> nodes = new ArrayList<>();
+	private Map<String, List<String>> tags = new TreeMap<>();
+	private Set<String> names = new HashSet<>();
+	private List<String> defaults = List.of("a", "b");
+	private Date created = new Date(0);
+
+	PrototypeCatalog() {
+	}
+
+	PrototypeCatalog(PrototypeGraphNode node) {
+		nodes.add(node);
+		nodes.add(node);
+		tags.put("colors", new ArrayList<>(List.of("red", "blue")));
+		names.add("catalog");
+	}
+
+	List<PrototypeGraphNode> getNodes() {
+		return nodes;
+	}
+
+	Map<String, List<String>> getTags() {
+		return tags;
+	}
+
+	Set<String> getNames() {
+		return names;
+	}
+
+	List<String> getDefaults() {
+		return defaults;
+	}
+
+	Date getCreated() {
+		return created;
+	}
+}
+
+//Sample graph used to compare the copy strategies
+class PrototypeGraphNode implements Cloneable, Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private int id;
+	private String name;
+	private double[] weights;
+	private PrototypeGraphNode parent;
+	private PrototypeGraphNode[] children;
+
+	PrototypeGraphNode() {
+	}
+
+	PrototypeGraphNode(int id, String name, PrototypeGraphNode parent, int childCount, int depth) {
+		this.id = id;
+		this.name = name;
+		this.parent = parent;
+		this.weights = new double[16];
+		Arrays.fill(weights, id);
+		this.children = new PrototypeGraphNode[depth == 0 ? 0 : childCount];
+		for (int i = 0; i < children.length; i++) {
+			children[i] = new PrototypeGraphNode(id * childCount + i + 1, name, this, childCount, depth - 1);
+		}
+	}
+
+	PrototypeGraphNode getParent() {
+		return parent;
+	}
+
+	PrototypeGraphNode[] getChildren() {
+		return children;
+	}
+
+	@Override
+	public PrototypeGraphNode clone() {
+		try {
+			return (PrototypeGraphNode) super.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new AssertionError(e);
+		}
+	}
+}
+
+//Compares the copier against Object.clone and serialization based copying
+class PrototypeCopierBenchmark {
+	private static final int ROUNDS = 5;
+
+	interface Copy {
+		Object copy(PrototypeGraphNode node) throws Exception;
+	}
+
+	static void report(String name, PrototypeGraphNode graph, int iterations, Copy copy) throws Exception {
+		Blackhole blackhole = new Blackhole();
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				blackhole.consume(copy.copy(graph));
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		System.out.printf("%-32s %10.2f us/copy%n", name, best / 1e3 / iterations);
+	}
+
+	static Object serializationCopy(Object source) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(source);
+		}
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			return in.readObject();
+		}
+	}
+
+	static void run() throws Exception {
+		// 4-ary tree of depth 5 with parent back references: 1365 nodes
+		PrototypeGraphNode graph = new PrototypeGraphNode(0, "node", null, 4, 5);
+		report("Object.clone (shallow only)", graph, 1_000_000, PrototypeGraphNode::clone);
+		report("PrototypeCopier (deep)", graph, 2_000, PrototypeCopier::copy);
+		report("Serialization (deep)", graph, 200, PrototypeCopierBenchmark::serializationCopy);
+	}
+}
+
+public class PrototypeCopierExample {
+
+	public static void main(String[] args) throws Exception {
+		PrototypeGraphNode root = new PrototypeGraphNode(0, "root", null, 2, 2);
+		PrototypeGraphNode copy = PrototypeCopier.copy(root);
+
+		PrototypeGraphNode child = copy.getChildren()[0];
+		System.out.println("Children copied: " + (child != root.getChildren()[0]));
+		System.out.println("Cycle preserved: " + (child.getParent() == copy));
+
+		// Standard collections are copied together with their elements
+		PrototypeCatalog catalog = new PrototypeCatalog(root);
+		PrototypeCatalog catalogCopy = PrototypeCopier.copy(catalog);
+		System.out.println("List copied: " + (catalogCopy.getNodes() != catalog.getNodes()) + ", elements copied: "
+				+ (catalogCopy.getNodes().get(0) != root) + ", sharing preserved: "
+				+ (catalogCopy.getNodes().get(0) == catalogCopy.getNodes().get(1)));
+		System.out.println("Map copied: " + catalogCopy.getTags() + ", values copied: "
+				+ (catalogCopy.getTags().get("colors") != catalog.getTags().get("colors")));
+		System.out.println("Set copied: " + catalogCopy.getNames() + ", immutable list copied: "
+				+ catalogCopy.getDefaults() + ", date copied: " + (catalogCopy.getCreated() != catalog.getCreated()));
+
+		ConcretePrototype prototype = new ConcretePrototype(1, "Prototype");
+		System.out.println("Cloned Object: " + prototype.clone());
+
+		if (args.length > 0 && args[0].equals("--benchmark")) {
+			PrototypeCopierBenchmark.run();
+		}
+	}
+}
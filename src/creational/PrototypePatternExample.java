@@ -25,6 +25,10 @@ class ConcretePrototype implements Prototype {
 		this.name = name;
 	}
 
+	// Used by PrototypeCopier to allocate copies
+	private ConcretePrototype() {
+	}
+
 	public void setId(int id) {
 		this.id = id;
 	}
@@ -33,15 +37,10 @@ class ConcretePrototype implements Prototype {
 		this.name = name;
 	}
 
-	// Implementing clone method using the Cloneable interface
+	// Implementing clone method as a deep copy of the prototype
 	@Override
 	public Prototype clone() {
-		try {
-			return (ConcretePrototype) super.clone();
-		} catch (CloneNotSupportedException e) {
-			// Handle clone not supported exception
-			return null;
-		}
+		return PrototypeCopier.copy(this);
 	}
 
 	@Override
@@ -0,0 +1,161 @@
+package creational;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A prototype registry keeps named prototypes that clients clone instead of
+ * building objects from scratch. Reads from the registry are lock-free, and
+ * cloneMany() stamps out many clones of one prototype into a preallocated
+ * array in a single pass.
+ *
+ * CopyOnWritePrototype makes each of those clones cheap: a clone only shares
+ * the state of the object it was cloned from, and the state is copied the
+ * first time a setter such as setName or setId is called on the clone.
+ */
+//Prototype whose clones share state until they are modified
+class CopyOnWritePrototype implements Prototype {
+
+	// State shared between a prototype and its unmodified clones
+	private static final class State {
+		int id;
+		String name;
+
+		State(int id, String name) {
+			this.id = id;
+			this.name = name;
+		}
+	}
+
+	private State state;
+	// True once this object has its own copy of the state
+	private boolean ownsState;
+
+	public CopyOnWritePrototype(int id, String name) {
+		this.state = new State(id, name);
+		this.ownsState = true;
+	}
+
+	private CopyOnWritePrototype(State state) {
+		this.state = state;
+		this.ownsState = false;
+	}
+
+	public int getId() {
+		return state.id;
+	}
+
+	public String getName() {
+		return state.name;
+	}
+
+	public void setId(int id) {
+		writableState().id = id;
+	}
+
+	public void setName(String name) {
+		writableState().name = name;
+	}
+
+	// Returns true while this object still shares state with its source
+	boolean isShared() {
+		return !ownsState;
+	}
+
+	private State writableState() {
+		if (!ownsState) {
+			state = new State(state.id, state.name);
+			ownsState = true;
+		}
+		return state;
+	}
+
+	@Override
+	public CopyOnWritePrototype clone() {
+		// Both sides now share the state, so this object must copy before writing too.
+		// Checking first keeps concurrent clones of a registered prototype read-only.
+		if (ownsState) {
+			ownsState = false;
+		}
+		return new CopyOnWritePrototype(state);
+	}
+
+	@Override
+	public String toString() {
+		return "CopyOnWritePrototype{" + "id=" + state.id + ", name='" + state.name + '\'' + '}';
+	}
+}
+
+//Registry of named prototypes with lock-free reads
+class PrototypeRegistry {
+	private final ConcurrentHashMap<String, Prototype> prototypes = new ConcurrentHashMap<>();
+
+	// Stores a private clone, so later changes to the argument do not affect the registry
+	public void register(String key, Prototype prototype) {
+		prototypes.put(key, prototype.clone());
+	}
+
+	public void unregister(String key) {
+		prototypes.remove(key);
+	}
+
+	public Prototype clone(String key) {
+		return getPrototype(key).clone();
+	}
+
+	public Prototype[] cloneMany(String key, int count) {
+		return cloneMany(key, new Prototype[count]);
+	}
+
+	// Fills the whole target array with clones of the prototype registered for key
+	public <T extends Prototype> T[] cloneMany(String key, T[] target) {
+		return cloneMany(key, target, 0, target.length);
+	}
+
+	// Fills target[from, to) with clones of the prototype registered for key
+	@SuppressWarnings("unchecked")
+	public <T extends Prototype> T[] cloneMany(String key, T[] target, int from, int to) {
+		if (from < 0 || to > target.length || from > to) {
+			throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") out of bounds for length "
+					+ target.length);
+		}
+		Prototype prototype = getPrototype(key);
+		Class<?> componentType = target.getClass().getComponentType();
+		if (!componentType.isInstance(prototype)) {
+			throw new ClassCastException(prototype.getClass().getName() + " cannot be stored in "
+					+ componentType.getName() + "[]");
+		}
+		for (int i = from; i < to; i++) {
+			target[i] = (T) prototype.clone();
+		}
+		return target;
+	}
+
+	private Prototype getPrototype(String key) {
+		Prototype prototype = prototypes.get(key);
+		if (prototype == null) {
+			throw new IllegalArgumentException("No prototype registered for key " + key);
+		}
+		return prototype;
+	}
+}
+
+public class PrototypeRegistryExample {
+
+	public static void main(String[] args) {
+		PrototypeRegistry registry = new PrototypeRegistry();
+		registry.register("default", new CopyOnWritePrototype(1, "Prototype"));
+		registry.register("deep", new ConcretePrototype(2, "Deep Prototype"));
+
+		// Stamp out clones in one pass into a preallocated array
+		CopyOnWritePrototype[] clones = registry.cloneMany("default", new CopyOnWritePrototype[1000]);
+		System.out.println("First clone shares state: " + clones[0].isShared());
+
+		// Only the modified clone pays for its own copy of the state
+		clones[0].setName("Modified Clone");
+		System.out.println("Modified clone shares state: " + clones[0].isShared());
+		System.out.println(clones[0]);
+		System.out.println(clones[1]);
+
+		System.out.println(registry.clone("deep"));
+	}
+}
@@ -0,0 +1,216 @@
+package creational;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import benchmark.Blackhole;
+
+/**
+ * Micro-benchmark for the singleton variants in SingletonDesignPatternExample.
+ * Every variant's getInstance() is called from 1, 4, 16 and 64 threads and the
+ * harness reports throughput (calls per microsecond), p99 latency per call
+ * and the cold cost of the very first access, which includes class
+ * initialization of the variant.
+ *
+ * The cold figure is only meaningful once per JVM, so it is taken before any
+ * warm-up touches the class, and the warm-up of one variant must not bias the
+ * next one. Without arguments the harness therefore starts a fresh JVM for
+ * every variant; with a variant name as argument it measures only that one.
+ * A single call takes a few nanoseconds, less than the granularity of
+ * nanoTime, so calls are timed in batches and the latency is the batch time
+ * divided by the batch size. Batch samples are kept as a uniform reservoir over
+ * the whole measurement, so the p99 describes the entire run rather than its
+ * first milliseconds. Every result is handed to a per-thread Blackhole, so the JIT can
+ * neither merge the calls of a batch nor coarsen their locks.
+ */
+//One benchmarked variant
+class SingletonVariant {
+	final String name;
+	final Supplier<Object> accessor;
+
+	SingletonVariant(String name, Supplier<Object> accessor) {
+		this.name = name;
+		this.accessor = accessor;
+	}
+}
+
+//Result of one variant at one thread count
+class SingletonBenchmarkResult {
+	final String variant;
+	final int threads;
+	final double opsPerMicro;
+	final double p99Nanos;
+
+	SingletonBenchmarkResult(String variant, int threads, double opsPerMicro, double p99Nanos) {
+		this.variant = variant;
+		this.threads = threads;
+		this.opsPerMicro = opsPerMicro;
+		this.p99Nanos = p99Nanos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%-30s threads=%-3d throughput=%10.2f ops/us p99=%8.2f ns", variant, threads, opsPerMicro,
+				p99Nanos);
+	}
+}
+
+public class SingletonBenchmark {
+	static final int[] THREAD_COUNTS = { 1, 4, 16, 64 };
+	private static final long WARMUP_NANOS = 200_000_000L;
+	private static final long MEASURE_NANOS = 1_000_000_000L;
+	// Calls timed together, so nanoTime granularity and cost do not dominate
+	private static final int BATCH = 64;
+	private static final int SAMPLES_PER_THREAD = 8192;
+
+	static SingletonVariant[] variants() {
+		return new SingletonVariant[] { new SingletonVariant("Singleton", Singleton::getInstance),
+				new SingletonVariant("EagerInitializedSingleton", EagerInitializedSingleton::getInstance),
+				new SingletonVariant("LazyInitializedSingleton", LazyInitializedSingleton::getInstance),
+				new SingletonVariant("DoubleCheckedLockingSingleton", DoubleCheckedLockingSingleton::getInstance),
+				new SingletonVariant("BillPughSingleton", BillPughSingleton::getInstance),
+				new SingletonVariant("EnumSingleton", () -> EnumSingleton.INSTANCE) };
+	}
+
+	static SingletonVariant variant(String name) {
+		for (SingletonVariant variant : variants()) {
+			if (variant.name.equals(name)) {
+				return variant;
+			}
+		}
+		throw new IllegalArgumentException("Unknown singleton variant: " + name);
+	}
+
+	// Time of the first call, including class initialization of the variant
+	static long coldAccessNanos(SingletonVariant variant) {
+		Blackhole blackhole = new Blackhole();
+		long start = System.nanoTime();
+		blackhole.consume(variant.accessor.get());
+		return System.nanoTime() - start;
+	}
+
+	static SingletonBenchmarkResult run(SingletonVariant variant, int threads) throws InterruptedException {
+		runPhase(variant, threads, WARMUP_NANOS, null, null);
+		LongAdder ops = new LongAdder();
+		long[][] samples = new long[threads][];
+		long elapsed = runPhase(variant, threads, MEASURE_NANOS, ops, samples);
+		return new SingletonBenchmarkResult(variant.name, threads, ops.sum() / (elapsed / 1_000.0),
+				(double) percentile(samples, 0.99) / BATCH);
+	}
+
+	private static long runPhase(SingletonVariant variant, int threads, long durationNanos, LongAdder ops,
+			long[][] samples) throws InterruptedException {
+		CountDownLatch start = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			final int index = t;
+			Thread worker = new Thread(() -> {
+				long[] local = new long[SAMPLES_PER_THREAD];
+				long seen = 0;
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				long count = 0;
+				Supplier<Object> accessor = variant.accessor;
+				Blackhole blackhole = new Blackhole();
+				try {
+					start.await();
+					long before = System.nanoTime();
+					long deadline = before + durationNanos;
+					while (before < deadline) {
+						for (int i = 0; i < BATCH; i++) {
+							blackhole.consume(accessor.get());
+						}
+						long after = System.nanoTime();
+						long took = after - before;
+						before = after;
+						// Reservoir sampling: every sample of the run is kept with equal probability
+						if (seen < local.length) {
+							local[(int) seen] = took;
+						} else {
+							long slot = random.nextLong(seen + 1);
+							if (slot < local.length) {
+								local[(int) slot] = took;
+							}
+						}
+						seen++;
+						count += BATCH;
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					if (ops != null) {
+						ops.add(count);
+						samples[index] = Arrays.copyOf(local, (int) Math.min(seen, local.length));
+					}
+					done.countDown();
+				}
+			});
+			worker.setDaemon(true);
+			worker.start();
+		}
+		long begin = System.nanoTime();
+		start.countDown();
+		done.await();
+		return System.nanoTime() - begin;
+	}
+
+	static long percentile(long[][] samples, double percentile) {
+		int total = 0;
+		for (long[] s : samples) {
+			total += s.length;
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long[] all = new long[total];
+		int offset = 0;
+		for (long[] s : samples) {
+			System.arraycopy(s, 0, all, offset, s.length);
+			offset += s.length;
+		}
+		Arrays.sort(all);
+		return all[Math.min(total - 1, (int) Math.ceil(percentile * total) - 1)];
+	}
+
+	// Runs every variant in its own JVM, started the same way as this one
+	static void forkPerVariant() throws IOException, InterruptedException {
+		String java = ProcessHandle.current().info().command()
+				.orElse(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		String modulePath = System.getProperty("jdk.module.path");
+		for (SingletonVariant variant : variants()) {
+			List<String> command = new ArrayList<>();
+			command.add(java);
+			if (modulePath != null) {
+				command.addAll(List.of("-p", modulePath, "-m",
+						SingletonBenchmark.class.getModule().getName() + "/" + SingletonBenchmark.class.getName()));
+			} else {
+				command.addAll(List.of("-cp", System.getProperty("java.class.path"), SingletonBenchmark.class.getName()));
+			}
+			command.add(variant.name);
+			int exit = new ProcessBuilder(command).inheritIO().start().waitFor();
+			if (exit != 0) {
+				throw new IllegalStateException("Benchmark of " + variant.name + " failed with exit code " + exit);
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length == 0) {
+			forkPerVariant();
+			return;
+		}
+
+		// Cold access has to be measured before anything else loads the class
+		SingletonVariant variant = variant(args[0]);
+		System.out.printf("%-30s cold first access=%d ns%n", variant.name, coldAccessNanos(variant));
+		for (int threads : THREAD_COUNTS) {
+			System.out.println(run(variant, threads));
+		}
+	}
+}
@@ -0,0 +1,184 @@
+package creational;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * A keyed singleton registry extends the Singleton Pattern to many lazily
+ * created, process-wide instances identified by a key. Each key keeps the
+ * contract of DoubleCheckedLockingSingleton: exactly one instance is created
+ * and, once it is published, reads go through a volatile field without taking
+ * a lock. Every key has its own lock, so a slow first initialization of one key
+ * never blocks callers asking for another key.
+ */
+//Initialization statistics recorded for one key
+class SingletonInitStats {
+	private final long initNanos;
+	private final long initializedAtMillis;
+	private final String initializingThread;
+
+	SingletonInitStats(long initNanos, long initializedAtMillis, String initializingThread) {
+		this.initNanos = initNanos;
+		this.initializedAtMillis = initializedAtMillis;
+		this.initializingThread = initializingThread;
+	}
+
+	public long getInitNanos() {
+		return initNanos;
+	}
+
+	public long getInitializedAtMillis() {
+		return initializedAtMillis;
+	}
+
+	public String getInitializingThread() {
+		return initializingThread;
+	}
+
+	@Override
+	public String toString() {
+		return "SingletonInitStats{" + "initNanos=" + initNanos + ", initializedAtMillis=" + initializedAtMillis
+				+ ", initializingThread='" + initializingThread + '\'' + '}';
+	}
+}
+
+//Registry of lazily initialized singletons, one per key
+class SingletonRegistry<K> {
+
+	// Per-key holder, initialized with double-checked locking on the holder itself
+	private static final class Holder {
+		private final Supplier<?> factory;
+		private volatile Object instance;
+		private volatile SingletonInitStats stats;
+
+		Holder(Supplier<?> factory) {
+			this.factory = factory;
+		}
+
+		Object get() {
+			Object result = instance;
+			if (result == null) {
+				synchronized (this) {
+					result = instance;
+					if (result == null) {
+						long start = System.nanoTime();
+						result = factory.get();
+						if (result == null) {
+							throw new IllegalStateException("Singleton factory returned null");
+						}
+						stats = new SingletonInitStats(System.nanoTime() - start, System.currentTimeMillis(),
+								Thread.currentThread().getName());
+						instance = result;
+					}
+				}
+			}
+			return result;
+		}
+	}
+
+	private final ConcurrentHashMap<K, Holder> holders = new ConcurrentHashMap<>();
+
+	// Registers the factory for a key; the instance is created on first access
+	public void register(K key, Supplier<?> factory) {
+		if (holders.putIfAbsent(key, new Holder(factory)) != null) {
+			throw new IllegalStateException("Singleton already registered for key " + key);
+		}
+	}
+
+	// Registers every factory, or none of them if any key is already registered
+	public void registerAll(Map<K, ? extends Supplier<?>> factories) {
+		Map<K, Holder> added = new HashMap<>();
+		for (Map.Entry<K, ? extends Supplier<?>> entry : factories.entrySet()) {
+			Holder holder = new Holder(entry.getValue());
+			if (holders.putIfAbsent(entry.getKey(), holder) != null) {
+				added.forEach(holders::remove);
+				throw new IllegalStateException("Singleton already registered for key " + entry.getKey());
+			}
+			added.put(entry.getKey(), holder);
+		}
+	}
+
+	// Returns the single instance for the key, creating it on first access
+	public <T> T getInstance(K key, Class<T> type) {
+		Holder holder = holders.get(key);
+		if (holder == null) {
+			throw new IllegalArgumentException("No singleton registered for key " + key);
+		}
+		return type.cast(holder.get());
+	}
+
+	// Registers the factory if needed and returns the single instance for the key
+	public <T> T computeIfAbsent(K key, Class<T> type, Supplier<? extends T> factory) {
+		Holder holder = holders.get(key);
+		if (holder == null) {
+			// Only the cheap holder is created inside the map, never the instance
+			holder = holders.computeIfAbsent(key, k -> new Holder(factory));
+		}
+		return type.cast(holder.get());
+	}
+
+	public boolean isInitialized(K key) {
+		Holder holder = holders.get(key);
+		return holder != null && holder.instance != null;
+	}
+
+	// Returns the init stats of the key, or null if it has not been initialized yet
+	public SingletonInitStats getStats(K key) {
+		Holder holder = holders.get(key);
+		return holder == null ? null : holder.stats;
+	}
+
+	// Snapshot of the init stats of all initialized keys
+	public Map<K, SingletonInitStats> getAllStats() {
+		Map<K, SingletonInitStats> result = new ConcurrentHashMap<>();
+		holders.forEach((key, holder) -> {
+			SingletonInitStats stats = holder.stats;
+			if (stats != null) {
+				result.put(key, stats);
+			}
+		});
+		return Collections.unmodifiableMap(result);
+	}
+}
+
+public class SingletonRegistryExample {
+
+	static class ConfigurationManager {
+		ConfigurationManager() {
+			System.out.println("Creating ConfigurationManager");
+		}
+	}
+
+	static class ConnectionPool {
+		ConnectionPool() {
+			System.out.println("Creating ConnectionPool");
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		SingletonRegistry<String> registry = new SingletonRegistry<>();
+		registry.register("config", ConfigurationManager::new);
+		registry.register("pool", ConnectionPool::new);
+
+		// Several threads race for the same key, only one instance is created
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(() -> registry.getInstance("config", ConfigurationManager.class));
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		ConfigurationManager config1 = registry.getInstance("config", ConfigurationManager.class);
+		ConfigurationManager config2 = registry.getInstance("config", ConfigurationManager.class);
+		System.out.println(config1 == config2);
+
+		System.out.println("pool initialized: " + registry.isInitialized("pool"));
+		registry.getInstance("pool", ConnectionPool.class);
+		System.out.println(registry.getAllStats());
+	}
+}
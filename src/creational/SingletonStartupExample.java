@@ -0,0 +1,280 @@
+package creational;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Eagerly initialized singletons such as EagerInitializedSingleton and
+ * BillPughSingleton are built serially by whichever thread first touches their
+ * class. The startup scheduler pre-initializes singletons at application start
+ * instead: each singleton declares the singletons it depends on, and every
+ * singleton whose dependencies are ready is built in parallel on a fork-join
+ * pool. Startup then takes as long as the longest dependency chain rather than
+ * the sum of all initializations. Initializers usually block on I/O, so each
+ * one runs as a ForkJoinPool.ManagedBlocker, which lets the pool add threads
+ * while workers are blocked. Unless a pool is supplied, every start() gets a
+ * dedicated pool sized to the available processors; blocked initializers make
+ * it add compensating threads, so I/O-bound startups still run in parallel.
+ * start() registers either all declared singletons or, if any name is already
+ * taken in the registry, none of them.
+ */
+//Timeline entry of one pre-initialized singleton
+class SingletonInitTimeline {
+	private final String name;
+	private final long startOffsetNanos;
+	private final long endOffsetNanos;
+	private final String thread;
+
+	SingletonInitTimeline(String name, long startOffsetNanos, long endOffsetNanos, String thread) {
+		this.name = name;
+		this.startOffsetNanos = startOffsetNanos;
+		this.endOffsetNanos = endOffsetNanos;
+		this.thread = thread;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getStartOffsetNanos() {
+		return startOffsetNanos;
+	}
+
+	public long getEndOffsetNanos() {
+		return endOffsetNanos;
+	}
+
+	public long getDurationNanos() {
+		return endOffsetNanos - startOffsetNanos;
+	}
+
+	public String getThread() {
+		return thread;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%-12s start=%6.1f ms end=%6.1f ms on %s", name, startOffsetNanos / 1e6,
+				endOffsetNanos / 1e6, thread);
+	}
+}
+
+//Result of a startup run
+class StartupReport {
+	private final List<SingletonInitTimeline> timeline;
+	private final long wallClockNanos;
+
+	StartupReport(List<SingletonInitTimeline> timeline, long wallClockNanos) {
+		this.timeline = Collections.unmodifiableList(timeline);
+		this.wallClockNanos = wallClockNanos;
+	}
+
+	public List<SingletonInitTimeline> getTimeline() {
+		return timeline;
+	}
+
+	public long getWallClockNanos() {
+		return wallClockNanos;
+	}
+
+	// What startup would have cost if every singleton had been built serially
+	public long getSerialNanos() {
+		long total = 0;
+		for (SingletonInitTimeline entry : timeline) {
+			total += entry.getDurationNanos();
+		}
+		return total;
+	}
+}
+
+//Builds declared singletons in dependency order, in parallel where possible
+class SingletonStartupScheduler {
+
+	private static final class Declaration {
+		final Supplier<?> factory;
+		final List<String> dependencies;
+
+		Declaration(Supplier<?> factory, List<String> dependencies) {
+			this.factory = factory;
+			this.dependencies = dependencies;
+		}
+	}
+
+	// Builds one singleton while telling the pool that the worker may block
+	private final class InitBlocker implements ForkJoinPool.ManagedBlocker {
+		private final String name;
+		private boolean done;
+
+		InitBlocker(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public boolean block() {
+			registry.getInstance(name, Object.class);
+			done = true;
+			return true;
+		}
+
+		@Override
+		public boolean isReleasable() {
+			return done || registry.isInitialized(name);
+		}
+	}
+
+	private final SingletonRegistry<String> registry;
+	private final ForkJoinPool pool;
+	private final Map<String, Declaration> declarations = new LinkedHashMap<>();
+	private boolean started;
+
+	// Every start() runs on a dedicated pool sized to the available processors
+	public SingletonStartupScheduler(SingletonRegistry<String> registry) {
+		this.registry = registry;
+		this.pool = null;
+	}
+
+	public SingletonStartupScheduler(SingletonRegistry<String> registry, ForkJoinPool pool) {
+		this.registry = registry;
+		this.pool = pool;
+	}
+
+	// Declares a singleton and the singletons that must be built before it
+	public SingletonStartupScheduler declare(String name, Supplier<?> factory, String... dependencies) {
+		if (started) {
+			throw new IllegalStateException("Startup already ran");
+		}
+		if (declarations.containsKey(name)) {
+			throw new IllegalStateException("Singleton already declared: " + name);
+		}
+		declarations.put(name, new Declaration(factory, Arrays.asList(dependencies)));
+		return this;
+	}
+
+	// Validates the dependency graph, registers the singletons and blocks until they are built
+	public StartupReport start() {
+		if (started) {
+			throw new IllegalStateException("Startup already ran");
+		}
+		// Nothing is registered until the graph is known to be complete and acyclic
+		List<String> order = topologicalOrder();
+		Map<String, Supplier<?>> factories = new LinkedHashMap<>();
+		declarations.forEach((name, declaration) -> factories.put(name, declaration.factory));
+		registry.registerAll(factories);
+		started = true;
+
+		ForkJoinPool executor = pool != null ? pool : new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		try {
+			return run(order, executor);
+		} finally {
+			if (executor != pool) {
+				executor.shutdown();
+				executor.awaitQuiescence(1, TimeUnit.SECONDS);
+			}
+		}
+	}
+
+	private StartupReport run(List<String> order, ForkJoinPool executor) {
+		Map<String, CompletableFuture<SingletonInitTimeline>> futures = new HashMap<>();
+		long origin = System.nanoTime();
+
+		for (String name : order) {
+			List<String> dependencies = declarations.get(name).dependencies;
+			CompletableFuture<?>[] prerequisites = new CompletableFuture<?>[dependencies.size()];
+			for (int i = 0; i < prerequisites.length; i++) {
+				prerequisites[i] = futures.get(dependencies.get(i));
+			}
+			CompletableFuture<SingletonInitTimeline> future = CompletableFuture.allOf(prerequisites)
+					.thenApplyAsync(ignored -> {
+						long start = System.nanoTime() - origin;
+						try {
+							ForkJoinPool.managedBlock(new InitBlocker(name));
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							throw new IllegalStateException("Interrupted while initializing " + name, e);
+						}
+						return new SingletonInitTimeline(name, start, System.nanoTime() - origin,
+								Thread.currentThread().getName());
+					}, executor);
+			futures.put(name, future);
+		}
+
+		List<SingletonInitTimeline> timeline = new ArrayList<>();
+		try {
+			for (String name : order) {
+				timeline.add(futures.get(name).join());
+			}
+		} catch (CompletionException e) {
+			throw new IllegalStateException("Singleton startup failed", e.getCause());
+		}
+		return new StartupReport(timeline, System.nanoTime() - origin);
+	}
+
+	// Orders declarations so that every singleton follows its dependencies
+	private List<String> topologicalOrder() {
+		List<String> order = new ArrayList<>();
+		Map<String, Boolean> visiting = new HashMap<>();
+		for (String name : declarations.keySet()) {
+			visit(name, visiting, order);
+		}
+		return order;
+	}
+
+	private void visit(String name, Map<String, Boolean> visiting, List<String> order) {
+		Boolean state = visiting.get(name);
+		if (Boolean.FALSE.equals(state)) {
+			return;
+		}
+		if (Boolean.TRUE.equals(state)) {
+			throw new IllegalStateException("Dependency cycle through singleton: " + name);
+		}
+		Declaration declaration = declarations.get(name);
+		if (declaration == null) {
+			throw new IllegalStateException("Undeclared singleton dependency: " + name);
+		}
+		visiting.put(name, Boolean.TRUE);
+		for (String dependency : declaration.dependencies) {
+			visit(dependency, visiting, order);
+		}
+		visiting.put(name, Boolean.FALSE);
+		order.add(name);
+	}
+}
+
+public class SingletonStartupExample {
+
+	// Stands in for an expensive constructor
+	static Object slowInit(String name, long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return name;
+	}
+
+	public static void main(String[] args) {
+		SingletonRegistry<String> registry = new SingletonRegistry<>();
+		SingletonStartupScheduler scheduler = new SingletonStartupScheduler(registry);
+
+		scheduler.declare("config", () -> slowInit("config", 50))
+				.declare("metrics", () -> slowInit("metrics", 80))
+				.declare("pool", () -> slowInit("pool", 100), "config")
+				.declare("cache", () -> slowInit("cache", 60), "config")
+				.declare("service", () -> slowInit("service", 40), "pool", "cache", "metrics");
+
+		StartupReport report = scheduler.start();
+		report.getTimeline().forEach(System.out::println);
+		System.out.printf("Startup took %.1f ms, serial initialization would take %.1f ms%n",
+				report.getWallClockNanos() / 1e6, report.getSerialNanos() / 1e6);
+	}
+}
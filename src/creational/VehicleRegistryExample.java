@@ -0,0 +1,187 @@
+package creational;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.concurrent.ConcurrentHashMap;
+
+import benchmark.Blackhole;
+
+/**
+ * A factory registry resolves the VehicleFactory for a string or configuration
+ * key, so callers no longer need to hold the right factory instance. Each key
+ * is bound once to a VehicleFactory generated by LambdaMetafactory around the
+ * vehicle's no-arg constructor. After binding, creating a vehicle costs a map
+ * lookup plus an interface call that the JIT inlines like a plain "new", with
+ * no reflection or Class.forName on the request path.
+ */
+//Registry mapping keys to generated vehicle factories
+class VehicleRegistry {
+	private static final MethodType FACTORY_TYPE = MethodType.methodType(VehicleFactory.class);
+	private static final MethodType CREATE_TYPE = MethodType.methodType(Vehicle.class);
+
+	private final ConcurrentHashMap<String, VehicleFactory> factories = new ConcurrentHashMap<>();
+
+	// Binds a key to a vehicle class of this package
+	public void register(String key, Class<? extends Vehicle> type) {
+		register(key, type, MethodHandles.lookup());
+	}
+
+	// Binds a key to a vehicle class, using a lookup that can access its constructor
+	public void register(String key, Class<? extends Vehicle> type, MethodHandles.Lookup lookup) {
+		register(key, generateFactory(type, lookup));
+	}
+
+	// Binds a key to an existing factory, e.g. a pooled one
+	public void register(String key, VehicleFactory factory) {
+		if (factories.putIfAbsent(key, factory) != null) {
+			throw new IllegalStateException("Vehicle already registered for key " + key);
+		}
+	}
+
+	public VehicleFactory getFactory(String key) {
+		VehicleFactory factory = factories.get(key);
+		if (factory == null) {
+			throw new IllegalArgumentException("No vehicle registered for key " + key);
+		}
+		return factory;
+	}
+
+	public Vehicle create(String key) {
+		return getFactory(key).createVehicle();
+	}
+
+	static VehicleFactory generateFactory(Class<? extends Vehicle> type, MethodHandles.Lookup lookup) {
+		try {
+			MethodHandle constructor = lookup.findConstructor(type, MethodType.methodType(void.class));
+			CallSite site = LambdaMetafactory.metafactory(lookup, "createVehicle", FACTORY_TYPE, CREATE_TYPE,
+					constructor, MethodType.methodType(type));
+			return (VehicleFactory) site.getTarget().invokeExact();
+		} catch (Throwable e) {
+			throw new IllegalArgumentException("Cannot generate factory for " + type.getName(), e);
+		}
+	}
+}
+
+//Compares the registry against reflective and method handle instantiation
+class VehicleRegistryBenchmark {
+	private static final int ITERATIONS = 20_000_000;
+	private static final int ROUNDS = 5;
+
+	// Each strategy has its own copy of the loop, so every call site only ever sees one target class
+	static long directNew() {
+		Blackhole blackhole = new Blackhole();
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < ITERATIONS; i++) {
+				blackhole.consume(new Car());
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best;
+	}
+
+	static long registryLookup(VehicleRegistry registry) {
+		Blackhole blackhole = new Blackhole();
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < ITERATIONS; i++) {
+				blackhole.consume(registry.create("car"));
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best;
+	}
+
+	static long boundFactory(VehicleFactory factory) {
+		Blackhole blackhole = new Blackhole();
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < ITERATIONS; i++) {
+				blackhole.consume(factory.createVehicle());
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best;
+	}
+
+	static long methodHandle(MethodHandle handle) throws Throwable {
+		Blackhole blackhole = new Blackhole();
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < ITERATIONS; i++) {
+				blackhole.consume((Vehicle) handle.invokeExact());
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best;
+	}
+
+	static long constructor(Constructor<? extends Vehicle> constructor) throws ReflectiveOperationException {
+		Blackhole blackhole = new Blackhole();
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < ITERATIONS; i++) {
+				blackhole.consume(constructor.newInstance());
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best;
+	}
+
+	static long forName(String className) throws ReflectiveOperationException {
+		Blackhole blackhole = new Blackhole();
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < ITERATIONS; i++) {
+				blackhole.consume((Vehicle) Class.forName(className).getDeclaredConstructor().newInstance());
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best;
+	}
+
+	static void report(String name, long bestNanos) {
+		System.out.printf("%-28s %6.2f ns/op%n", name, (double) bestNanos / ITERATIONS);
+	}
+
+	static void run(VehicleRegistry registry) throws Throwable {
+		Constructor<? extends Vehicle> constructor = Car.class.getDeclaredConstructor();
+		MethodHandle handle = MethodHandles.lookup().findConstructor(Car.class, MethodType.methodType(void.class))
+				.asType(MethodType.methodType(Vehicle.class));
+
+		report("direct new", directNew());
+		report("registry lookup + create", registryLookup(registry));
+		report("bound factory", boundFactory(registry.getFactory("car")));
+		report("MethodHandle.invokeExact", methodHandle(handle));
+		report("Constructor.newInstance", constructor(constructor));
+		report("Class.forName + newInstance", forName(Car.class.getName()));
+	}
+}
+
+public class VehicleRegistryExample {
+
+	public static void main(String[] args) throws Throwable {
+		VehicleRegistry registry = new VehicleRegistry();
+		registry.register("car", Car.class);
+		registry.register("truck", Truck.class);
+
+		// Keys would normally come from configuration or a request
+		for (String key : new String[] { "car", "truck" }) {
+			registry.create(key).drive();
+		}
+
+		if (args.length > 0 && args[0].equals("--benchmark")) {
+			VehicleRegistryBenchmark.run(registry);
+		}
+	}
+}
@@ -5,4 +5,6 @@
  * 
  */
 module designpatterns {
-}
\ No newline at end of file
+	// Allocation measurements read per-thread allocated bytes from com.sun.management
+	requires jdk.management;
+}
@@ -0,0 +1,528 @@
+package structural;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * InternetProxy decides access with a single hard-coded comparison. The access
+ * policy engine evaluates large rule sets instead: exact domains such as
+ * "adult-site.com" and wildcard suffixes such as "*.casino.example", either
+ * denied for everyone or only for minors. Rules are compiled into an immutable
+ * snapshot holding a trie keyed by the reversed labels of the domain (com ->
+ * example -> casino), stored in flat arrays and open-addressing tables so that
+ * millions of rules stay compact. A Bloom filter over every rule suffix answers
+ * most lookups of unlisted domains before the trie is touched. Reloading a
+ * rule set compiles a new snapshot and swaps it in atomically, so lookups never
+ * take a lock.
+ */
+//Outcome of a policy lookup, ordered from least to most restrictive
+enum AccessDecision {
+	ALLOW, DENY_MINORS, DENY;
+
+	boolean allows(int userAge) {
+		return this == ALLOW || (this == DENY_MINORS && userAge >= 18);
+	}
+}
+
+//Immutable compiled rule set
+final class DomainPolicy {
+	// Node flags: rule for the node's domain itself and rule for its subdomains
+	private static final byte EXACT_DENY = 1;
+	private static final byte EXACT_MINORS = 2;
+	private static final byte WILDCARD_DENY = 4;
+	private static final byte WILDCARD_MINORS = 8;
+
+	private static final int BLOOM_PROBES = 4;
+
+	private final byte[] nodeFlags;
+	// Label dictionary: lower-case ASCII bytes of all labels, addressed by label id
+	private final byte[] labelBytes;
+	private final int[] labelOffsets;
+	private final int[] labelSlots;
+	// Trie edges: key (parent node << 32 | label id) -> child node
+	private final long[] edgeKeys;
+	private final int[] edgeChildren;
+	private final long[] bloom;
+	private final int rules;
+
+	private DomainPolicy(Builder builder) {
+		this.nodeFlags = Arrays.copyOf(builder.nodeFlags, builder.nodes);
+		this.labelBytes = Arrays.copyOf(builder.labelBytes, builder.labelBytesUsed);
+		this.labelOffsets = Arrays.copyOf(builder.labelOffsets, builder.labels + 1);
+		// The hash tables keep their capacity, which their probing depends on, but are copied as well, so
+		// rules added to the builder afterwards cannot reach this policy
+		this.labelSlots = builder.labelSlots.clone();
+		this.edgeKeys = builder.edgeKeys.clone();
+		this.edgeChildren = builder.edgeChildren.clone();
+		this.rules = builder.rules;
+
+		// Bloom filter over every suffix that carries a rule, about ten bits per rule
+		int bits = Integer.highestOneBit(Math.max(64, rules * 10 - 1)) << 1;
+		this.bloom = new long[bits >>> 6];
+		for (int i = 0; i < builder.suffixHashCount; i++) {
+			long hash = builder.suffixHashes[i];
+			for (int probe = 0; probe < BLOOM_PROBES; probe++) {
+				int bit = bloomBit(hash, probe);
+				bloom[bit >>> 6] |= 1L << bit;
+			}
+		}
+	}
+
+	public static DomainPolicy empty() {
+		return new Builder().build();
+	}
+
+	public int getRules() {
+		return rules;
+	}
+
+	public AccessDecision decide(String domain) {
+		int end = domain.length();
+		if (end > 0 && domain.charAt(end - 1) == '.') {
+			end--;
+		}
+		if (!mightMatch(domain, end)) {
+			return AccessDecision.ALLOW;
+		}
+
+		AccessDecision decision = AccessDecision.ALLOW;
+		int node = 0;
+		int labelEnd = end;
+		while (labelEnd > 0) {
+			int labelStart = domain.lastIndexOf('.', labelEnd - 1) + 1;
+			int label = findLabel(domain, labelStart, labelEnd);
+			if (label < 0) {
+				break;
+			}
+			node = findChild(node, label);
+			if (node < 0) {
+				break;
+			}
+			byte flags = nodeFlags[node];
+			if (labelStart == 0) {
+				decision = strictest(decision, flags, EXACT_DENY, EXACT_MINORS);
+			} else {
+				decision = strictest(decision, flags, WILDCARD_DENY, WILDCARD_MINORS);
+			}
+			labelEnd = labelStart - 1;
+		}
+		return decision;
+	}
+
+	private static AccessDecision strictest(AccessDecision current, byte flags, byte deny, byte minors) {
+		if ((flags & deny) != 0) {
+			return AccessDecision.DENY;
+		}
+		if ((flags & minors) != 0 && current == AccessDecision.ALLOW) {
+			return AccessDecision.DENY_MINORS;
+		}
+		return current;
+	}
+
+	// False if no suffix of the domain can carry a rule
+	private boolean mightMatch(String domain, int end) {
+		int start = end;
+		while (start > 0) {
+			start = domain.lastIndexOf('.', start - 1) + 1;
+			long hash = hash(domain, start, end);
+			boolean present = true;
+			for (int probe = 0; probe < BLOOM_PROBES && present; probe++) {
+				int bit = bloomBit(hash, probe);
+				present = (bloom[bit >>> 6] & (1L << bit)) != 0;
+			}
+			if (present) {
+				return true;
+			}
+			start--;
+		}
+		return false;
+	}
+
+	private int bloomBit(long hash, int probe) {
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32) | 1;
+		return (h1 + probe * h2) & ((bloom.length << 6) - 1);
+	}
+
+	private int findLabel(String domain, int start, int end) {
+		int mask = labelSlots.length - 1;
+		int slot = (int) hash(domain, start, end) & mask;
+		while (true) {
+			int label = labelSlots[slot] - 1;
+			if (label < 0) {
+				return -1;
+			}
+			if (labelEquals(labelBytes, labelOffsets[label], labelOffsets[label + 1], domain, start, end)) {
+				return label;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private int findChild(int parent, int label) {
+		long key = edgeKey(parent, label);
+		int mask = edgeKeys.length - 1;
+		int slot = mix(key) & mask;
+		while (true) {
+			long candidate = edgeKeys[slot];
+			if (candidate == 0) {
+				return -1;
+			}
+			if (candidate == key) {
+				return edgeChildren[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	// Never 0, so 0 can mark a free slot
+	static long edgeKey(int parent, int label) {
+		return ((long) parent << 32 | label) + 1;
+	}
+
+	static int mix(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+
+	static boolean labelEquals(byte[] bytes, int from, int to, String domain, int start, int end) {
+		if (to - from != end - start) {
+			return false;
+		}
+		for (int i = 0; i < end - start; i++) {
+			if (bytes[from + i] != toLowerAscii(domain.charAt(start + i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static int toLowerAscii(char c) {
+		return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+	}
+
+	// Case-insensitive 64-bit hash of domain[start, end)
+	static long hash(String domain, int start, int end) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = start; i < end; i++) {
+			hash ^= toLowerAscii(domain.charAt(i));
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	// Compiles rules; not thread-safe, build() hands out an immutable snapshot
+	static final class Builder {
+		byte[] nodeFlags = new byte[64];
+		int nodes = 1;
+		byte[] labelBytes = new byte[256];
+		int labelBytesUsed;
+		int[] labelOffsets = new int[65];
+		int labels;
+		int[] labelSlots = new int[128];
+		long[] edgeKeys = new long[128];
+		int[] edgeChildren = new int[128];
+		int edges;
+		long[] suffixHashes = new long[64];
+		int suffixHashCount;
+		int rules;
+
+		// Parses "deny <pattern>" or "minors <pattern>"; blank lines and # comments are skipped
+		Builder rule(String line) {
+			String trimmed = line.trim();
+			if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+				return this;
+			}
+			int space = trimmed.indexOf(' ');
+			String action = space < 0 ? "" : trimmed.substring(0, space);
+			String pattern = space < 0 ? "" : trimmed.substring(space + 1).trim();
+			if (action.equals("deny")) {
+				return deny(pattern);
+			}
+			if (action.equals("minors")) {
+				return denyMinors(pattern);
+			}
+			throw new IllegalArgumentException("Invalid rule: " + line);
+		}
+
+		// "example.com" matches only that domain, "*.example.com" only its subdomains
+		Builder deny(String pattern) {
+			return add(pattern, EXACT_DENY, WILDCARD_DENY);
+		}
+
+		Builder denyMinors(String pattern) {
+			return add(pattern, EXACT_MINORS, WILDCARD_MINORS);
+		}
+
+		private Builder add(String pattern, byte exactFlag, byte wildcardFlag) {
+			boolean wildcard = pattern.startsWith("*.");
+			String domain = wildcard ? pattern.substring(2) : pattern;
+			if (domain.isEmpty() || domain.startsWith(".") || domain.endsWith(".") || domain.contains("..")
+					|| domain.contains("*")) {
+				throw new IllegalArgumentException("Invalid domain pattern: " + pattern);
+			}
+			int node = 0;
+			int labelEnd = domain.length();
+			while (labelEnd > 0) {
+				int labelStart = domain.lastIndexOf('.', labelEnd - 1) + 1;
+				node = child(node, label(domain, labelStart, labelEnd));
+				labelEnd = labelStart - 1;
+			}
+			nodeFlags[node] |= wildcard ? wildcardFlag : exactFlag;
+			addSuffixHash(DomainPolicy.hash(domain, 0, domain.length()));
+			rules++;
+			return this;
+		}
+
+		DomainPolicy build() {
+			return new DomainPolicy(this);
+		}
+
+		private void addSuffixHash(long hash) {
+			if (suffixHashCount == suffixHashes.length) {
+				suffixHashes = Arrays.copyOf(suffixHashes, suffixHashCount * 2);
+			}
+			suffixHashes[suffixHashCount++] = hash;
+		}
+
+		private int label(String domain, int start, int end) {
+			int mask = labelSlots.length - 1;
+			int slot = (int) DomainPolicy.hash(domain, start, end) & mask;
+			while (true) {
+				int label = labelSlots[slot] - 1;
+				if (label < 0) {
+					break;
+				}
+				if (labelEquals(labelBytes, labelOffsets[label], labelOffsets[label + 1], domain, start, end)) {
+					return label;
+				}
+				slot = (slot + 1) & mask;
+			}
+
+			int length = end - start;
+			if (labelBytesUsed + length > labelBytes.length) {
+				labelBytes = Arrays.copyOf(labelBytes, Math.max(labelBytes.length * 2, labelBytesUsed + length));
+			}
+			for (int i = 0; i < length; i++) {
+				char c = domain.charAt(start + i);
+				if (c > 0x7f) {
+					throw new IllegalArgumentException("Domains must be ASCII (punycode): " + domain);
+				}
+				labelBytes[labelBytesUsed + i] = (byte) toLowerAscii(c);
+			}
+			labelBytesUsed += length;
+			int label = labels++;
+			if (labels + 1 > labelOffsets.length) {
+				labelOffsets = Arrays.copyOf(labelOffsets, labelOffsets.length * 2);
+			}
+			labelOffsets[label + 1] = labelBytesUsed;
+			labelSlots[slot] = label + 1;
+			if (labels * 2 > labelSlots.length) {
+				rehashLabels();
+			}
+			return label;
+		}
+
+		private void rehashLabels() {
+			int[] slots = new int[labelSlots.length * 2];
+			int mask = slots.length - 1;
+			for (int label = 0; label < labels; label++) {
+				int slot = (int) hashLabel(label) & mask;
+				while (slots[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				slots[slot] = label + 1;
+			}
+			labelSlots = slots;
+		}
+
+		// Same value as DomainPolicy.hash over the label's characters
+		private long hashLabel(int label) {
+			long hash = 0xcbf29ce484222325L;
+			for (int i = labelOffsets[label]; i < labelOffsets[label + 1]; i++) {
+				hash ^= labelBytes[i];
+				hash *= 0x100000001b3L;
+			}
+			hash ^= hash >>> 33;
+			hash *= 0xc4ceb9fe1a85ec53L;
+			hash ^= hash >>> 33;
+			return hash;
+		}
+
+		private int child(int parent, int label) {
+			long key = edgeKey(parent, label);
+			int mask = edgeKeys.length - 1;
+			int slot = mix(key) & mask;
+			while (edgeKeys[slot] != 0) {
+				if (edgeKeys[slot] == key) {
+					return edgeChildren[slot];
+				}
+				slot = (slot + 1) & mask;
+			}
+			if (nodes == nodeFlags.length) {
+				nodeFlags = Arrays.copyOf(nodeFlags, nodes * 2);
+			}
+			int child = nodes++;
+			edgeKeys[slot] = key;
+			edgeChildren[slot] = child;
+			if (++edges * 2 > edgeKeys.length) {
+				rehashEdges();
+			}
+			return child;
+		}
+
+		private void rehashEdges() {
+			long[] keys = new long[edgeKeys.length * 2];
+			int[] children = new int[keys.length];
+			int mask = keys.length - 1;
+			for (int i = 0; i < edgeKeys.length; i++) {
+				if (edgeKeys[i] != 0) {
+					int slot = mix(edgeKeys[i]) & mask;
+					while (keys[slot] != 0) {
+						slot = (slot + 1) & mask;
+					}
+					keys[slot] = edgeKeys[i];
+					children[slot] = edgeChildren[i];
+				}
+			}
+			edgeKeys = keys;
+			edgeChildren = children;
+		}
+	}
+}
+
+//Holds the current policy snapshot and swaps it on reload
+class AccessPolicyEngine {
+	private volatile DomainPolicy policy = DomainPolicy.empty();
+
+	// Compiles the rules and atomically replaces the current policy; lookups are never blocked
+	public void reload(Iterable<String> ruleLines) {
+		DomainPolicy.Builder builder = new DomainPolicy.Builder();
+		for (String line : ruleLines) {
+			builder.rule(line);
+		}
+		policy = builder.build();
+	}
+
+	public void reload(DomainPolicy compiled) {
+		policy = compiled;
+	}
+
+	public DomainPolicy getPolicy() {
+		return policy;
+	}
+
+	public AccessDecision decide(String website) {
+		return policy.decide(website);
+	}
+
+	public boolean isAllowed(String website, int userAge) {
+		return policy.decide(website).allows(userAge);
+	}
+}
+
+//Proxy enforcing the rules of a policy engine
+class PolicyInternetProxy implements Internet {
+	private final Internet internet;
+	private final AccessPolicyEngine engine;
+	private final int userAge;
+
+	PolicyInternetProxy(Internet internet, AccessPolicyEngine engine, int userAge) {
+		this.internet = internet;
+		this.engine = engine;
+		this.userAge = userAge;
+	}
+
+	@Override
+	public void browse(String website) {
+		if (engine.isAllowed(website, userAge)) {
+			internet.browse(website);
+		} else {
+			System.out.println("Access denied to " + website + ".");
+		}
+	}
+
+	@Override
+	public String fetch(String website) {
+		if (!engine.isAllowed(website, userAge)) {
+			throw new SecurityException("Access denied to " + website + ".");
+		}
+		return internet.fetch(website);
+	}
+}
+
+//Measures lookups per second against large generated rule sets
+class AccessPolicyBenchmark {
+	private static final int LOOKUPS = 10_000_000;
+
+	// Keeps the JIT from eliminating the lookups
+	static volatile int sink;
+
+	static void run(int ruleCount) {
+		long start = System.nanoTime();
+		DomainPolicy.Builder builder = new DomainPolicy.Builder();
+		for (int i = 0; i < ruleCount; i++) {
+			if (i % 4 == 0) {
+				builder.deny("*.blocked-" + i + ".example");
+			} else {
+				builder.deny("site-" + i + ".example");
+			}
+		}
+		DomainPolicy policy = builder.build();
+		long compileNanos = System.nanoTime() - start;
+
+		String[] listed = new String[1024];
+		String[] unlisted = new String[1024];
+		for (int i = 0; i < listed.length; i++) {
+			int rule = (int) ((long) i * 7919 % ruleCount);
+			listed[i] = rule % 4 == 0 ? "www.blocked-" + rule + ".example" : "site-" + rule + ".example";
+			unlisted[i] = "www.allowed-" + i + ".org";
+		}
+
+		System.out.printf("%,d rules compiled in %.1f s%n", ruleCount, compileNanos / 1e9);
+		report("listed domains", policy, listed);
+		report("unlisted domains", policy, unlisted);
+	}
+
+	static void report(String name, DomainPolicy policy, String[] domains) {
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < 5; round++) {
+			int denied = 0;
+			long start = System.nanoTime();
+			for (int i = 0; i < LOOKUPS; i++) {
+				denied += policy.decide(domains[i & (domains.length - 1)]).ordinal();
+			}
+			best = Math.min(best, System.nanoTime() - start);
+			sink = denied;
+		}
+		System.out.printf("  %-18s %6.1f M lookups/s%n", name, LOOKUPS / (best / 1e3));
+	}
+}
+
+public class AccessPolicyExample {
+	public static void main(String[] args) {
+		AccessPolicyEngine engine = new AccessPolicyEngine();
+		engine.reload(List.of("minors adult-site.com", "minors *.adult-site.com", "deny *.malware.example"));
+
+		Internet internet = new PolicyInternetProxy(new RealInternet(), engine, 16);
+		internet.browse("google.com"); // Allowed
+		internet.browse("adult-site.com"); // Denied for minors
+		internet.browse("cdn.malware.example"); // Denied for everyone
+
+		// Hot reload: readers switch to the new snapshot without locking
+		engine.reload(List.of("deny google.com"));
+		internet.browse("google.com");
+		internet.browse("adult-site.com");
+
+		// Run with -Xmx4g for the 10 million rule set
+		if (args.length > 0 && args[0].equals("--benchmark")) {
+			AccessPolicyBenchmark.run(1_000_000);
+			AccessPolicyBenchmark.run(10_000_000);
+		}
+	}
+}
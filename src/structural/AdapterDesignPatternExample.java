@@ -1,5 +1,7 @@
 package structural;
 
+import java.nio.DoubleBuffer;
+
 /**
  * The Adapter Design Pattern is a structural design pattern that allows
  * incompatible interfaces to work together. It acts as a bridge between two
@@ -12,6 +14,13 @@ package structural;
 //Adaptee interface (existing interface)
 interface TemperatureProvider {
 	double getTemperatureCelsius();
+
+	// Fills target[offset, offset + length) with readings in Celsius
+	default void getTemperaturesCelsius(double[] target, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			target[i] = getTemperatureCelsius();
+		}
+	}
 }
 
 //Adaptee (existing class)
@@ -26,6 +35,20 @@ class CelciusTemperatureProvider implements TemperatureProvider {
 //Target interface (expected by the client)
 interface FahrenheitTemperatureProvider {
 	double getTemperatureFahrenheit();
+
+	// Fills target[offset, offset + length) with readings in Fahrenheit
+	default void getTemperaturesFahrenheit(double[] target, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			target[i] = getTemperatureFahrenheit();
+		}
+	}
+
+	// Fills the remaining space of target with readings in Fahrenheit
+	default void getTemperaturesFahrenheit(DoubleBuffer target) {
+		while (target.hasRemaining()) {
+			target.put(getTemperatureFahrenheit());
+		}
+	}
 }
 
 //Adapter
@@ -43,6 +66,23 @@ class TemperatureAdapter implements FahrenheitTemperatureProvider {
 		double fahrenheit = (celsius * 9 / 5) + 32;
 		return fahrenheit;
 	}
+
+	@Override
+	public void getTemperaturesFahrenheit(double[] target, int offset, int length) {
+		celciusTemperatureProvider.getTemperaturesCelsius(target, offset, length);
+		TemperatureConversions.celsiusToFahrenheit(target, offset, length);
+	}
+
+	@Override
+	public void getTemperaturesFahrenheit(DoubleBuffer target) {
+		if (target.hasArray()) {
+			int offset = target.arrayOffset() + target.position();
+			getTemperaturesFahrenheit(target.array(), offset, target.remaining());
+			target.position(target.limit());
+		} else {
+			FahrenheitTemperatureProvider.super.getTemperaturesFahrenheit(target);
+		}
+	}
 }
 
 //Client code
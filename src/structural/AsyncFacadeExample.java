@@ -0,0 +1,176 @@
+package structural;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Facade.operationFacade() calls its subsystems one after another, so when
+ * every subsystem does I/O the facade is as slow as all of them together. The
+ * asynchronous facade starts every subsystem call whose ordering constraints
+ * are met at the same time and returns a CompletableFuture that completes when
+ * all of them are done, so its latency approaches that of the slowest
+ * subsystem. Calls run on virtual threads when the JDK provides them and on a
+ * cached thread pool otherwise. When a call with a timeout expires, the
+ * subsystem calls that have not started yet are cancelled. Only an executor
+ * the facade created itself is shut down on close().
+ */
+//Subsystem operations the asynchronous facade can run
+enum FacadeStep {
+	A, B, C
+}
+
+//Facade running independent subsystem operations in parallel
+class AsyncFacade implements AutoCloseable {
+	private final SubsystemA subsystemA = new SubsystemA();
+	private final SubsystemB subsystemB = new SubsystemB();
+	private final SubsystemC subsystemC = new SubsystemC();
+
+	private final ExecutorService executor;
+	private final boolean ownsExecutor;
+	private final Map<FacadeStep, Set<FacadeStep>> prerequisites = new EnumMap<>(FacadeStep.class);
+
+	public AsyncFacade() {
+		this(newDefaultExecutor(), true);
+	}
+
+	// The caller keeps ownership of executor and shuts it down itself
+	public AsyncFacade(ExecutorService executor) {
+		this(executor, false);
+	}
+
+	private AsyncFacade(ExecutorService executor, boolean ownsExecutor) {
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+		for (FacadeStep step : FacadeStep.values()) {
+			prerequisites.put(step, EnumSet.noneOf(FacadeStep.class));
+		}
+	}
+
+	// Virtual thread per task executor on JDK 21+, cached daemon threads before that
+	static ExecutorService newDefaultExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable, "async-facade");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	// Declares that step "then" may only start after step "first" has completed
+	public synchronized AsyncFacade runBefore(FacadeStep first, FacadeStep then) {
+		if (first == then || dependsOn(first, then)) {
+			throw new IllegalArgumentException("Ordering " + first + " before " + then + " creates a cycle");
+		}
+		prerequisites.get(then).add(first);
+		return this;
+	}
+
+	// True if step transitively waits for dependency
+	private boolean dependsOn(FacadeStep step, FacadeStep dependency) {
+		for (FacadeStep prerequisite : prerequisites.get(step)) {
+			if (prerequisite == dependency || dependsOn(prerequisite, dependency)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public CompletableFuture<Void> operationFacadeAsync() {
+		return allOf(start());
+	}
+
+	// Fails with a TimeoutException if the subsystems take longer than timeout
+	public CompletableFuture<Void> operationFacadeAsync(Duration timeout) {
+		Map<FacadeStep, CompletableFuture<Void>> started = start();
+		return allOf(started).orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS).whenComplete((ignored, failure) -> {
+			if (failure instanceof CompletionException) {
+				failure = failure.getCause();
+			}
+			if (failure instanceof TimeoutException) {
+				// Steps still waiting for their prerequisites or a thread never run
+				for (CompletableFuture<Void> step : started.values()) {
+					step.cancel(false);
+				}
+			}
+		});
+	}
+
+	private synchronized Map<FacadeStep, CompletableFuture<Void>> start() {
+		Map<FacadeStep, CompletableFuture<Void>> started = new EnumMap<>(FacadeStep.class);
+		for (FacadeStep step : FacadeStep.values()) {
+			start(step, started);
+		}
+		return started;
+	}
+
+	private static CompletableFuture<Void> allOf(Map<FacadeStep, CompletableFuture<Void>> started) {
+		return CompletableFuture.allOf(started.values().toArray(new CompletableFuture<?>[0]));
+	}
+
+	private CompletableFuture<Void> start(FacadeStep step, Map<FacadeStep, CompletableFuture<Void>> started) {
+		CompletableFuture<Void> future = started.get(step);
+		if (future != null) {
+			return future;
+		}
+		List<CompletableFuture<Void>> before = new ArrayList<>();
+		for (FacadeStep prerequisite : prerequisites.get(step)) {
+			before.add(start(prerequisite, started));
+		}
+		if (before.isEmpty()) {
+			future = CompletableFuture.runAsync(() -> run(step), executor);
+		} else {
+			future = CompletableFuture.allOf(before.toArray(new CompletableFuture<?>[0]))
+					.thenRunAsync(() -> run(step), executor);
+		}
+		started.put(step, future);
+		return future;
+	}
+
+	private void run(FacadeStep step) {
+		switch (step) {
+		case A:
+			subsystemA.operationA();
+			break;
+		case B:
+			subsystemB.operationB();
+			break;
+		case C:
+			subsystemC.operationC();
+			break;
+		}
+	}
+
+	@Override
+	public void close() {
+		if (ownsExecutor) {
+			executor.shutdown();
+		}
+	}
+}
+
+public class AsyncFacadeExample {
+	public static void main(String[] args) {
+		try (AsyncFacade facade = new AsyncFacade()) {
+			// A and B run concurrently, C waits for A
+			facade.runBefore(FacadeStep.A, FacadeStep.C);
+			facade.operationFacadeAsync(Duration.ofSeconds(5)).join();
+			System.out.println("All subsystem operations completed");
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package structural;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+
+import benchmark.Blackhole;
+
+/**
+ * TemperatureAdapter converts one reading per virtual call. The batch methods
+ * of the provider and adapter interfaces fill a whole double[] or DoubleBuffer
+ * range with readings instead, and the adapter converts the range in place.
+ * The conversion uses the incubator Vector API when the jdk.incubator.vector
+ * module is present (run with --add-modules jdk.incubator.vector) and a plain
+ * scalar loop, which the JIT can still auto-vectorize, everywhere else. The
+ * Vector API is bound through method handles at class initialization, so the
+ * module is not a compile-time dependency and the default build does not use
+ * an incubating module. The handles are constants, so the JIT inlines them
+ * into the conversion loop. Both
+ * paths perform the same operations as getTemperatureFahrenheit(), so their
+ * results are identical to the per-reading path.
+ */
+//Celsius to Fahrenheit conversion of whole ranges
+final class TemperatureConversions {
+	static final boolean VECTORIZED = VectorTemperatureConversions.KERNEL != null;
+
+	private TemperatureConversions() {
+	}
+
+	// Converts values[offset, offset + length) from Celsius to Fahrenheit in place
+	static void celsiusToFahrenheit(double[] values, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, values.length);
+		if (VECTORIZED) {
+			VectorTemperatureConversions.celsiusToFahrenheit(values, offset, length);
+		} else {
+			scalarCelsiusToFahrenheit(values, offset, length);
+		}
+	}
+
+	static void scalarCelsiusToFahrenheit(double[] values, int offset, int length) {
+		for (int i = offset, end = offset + length; i < end; i++) {
+			values[i] = (values[i] * 9 / 5) + 32;
+		}
+	}
+}
+
+//Vector API implementation, bound only when the incubator module is present
+final class VectorTemperatureConversions {
+	// (double[] values, int offset) converting one vector in place, null without the Vector API
+	static final MethodHandle KERNEL;
+	static final int LANES;
+
+	static {
+		MethodHandle kernel = null;
+		int lanes = 1;
+		Optional<Module> module = ModuleLayer.boot().findModule("jdk.incubator.vector");
+		if (module.isPresent()) {
+			try {
+				Class<?> vectorType = Class.forName(module.get(), "jdk.incubator.vector.DoubleVector");
+				Class<?> speciesType = Class.forName(module.get(), "jdk.incubator.vector.VectorSpecies");
+				Object species = vectorType.getField("SPECIES_PREFERRED").get(null);
+				lanes = (Integer) speciesType.getMethod("length").invoke(species);
+				kernel = bindKernel(vectorType, speciesType, species);
+			} catch (ReflectiveOperationException e) {
+				// Incompatible incubator API: fall back to the scalar loop
+				kernel = null;
+				lanes = 1;
+			}
+		}
+		KERNEL = kernel;
+		LANES = lanes;
+	}
+
+	private VectorTemperatureConversions() {
+	}
+
+	// fromArray(species, values, offset).mul(9.0).div(5.0).add(32.0).intoArray(values, offset)
+	private static MethodHandle bindKernel(Class<?> vectorType, Class<?> speciesType, Object species)
+			throws ReflectiveOperationException {
+		MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+		MethodType scalarOperation = MethodType.methodType(vectorType, double.class);
+		MethodHandle load = MethodHandles.insertArguments(lookup.findStatic(vectorType, "fromArray",
+				MethodType.methodType(vectorType, speciesType, double[].class, int.class)), 0, species);
+		MethodHandle convert = MethodHandles.filterReturnValue(load,
+				MethodHandles.insertArguments(lookup.findVirtual(vectorType, "mul", scalarOperation), 1, 9.0));
+		convert = MethodHandles.filterReturnValue(convert,
+				MethodHandles.insertArguments(lookup.findVirtual(vectorType, "div", scalarOperation), 1, 5.0));
+		convert = MethodHandles.filterReturnValue(convert,
+				MethodHandles.insertArguments(lookup.findVirtual(vectorType, "add", scalarOperation), 1, 32.0));
+		MethodHandle store = lookup.findVirtual(vectorType, "intoArray",
+				MethodType.methodType(void.class, double[].class, int.class));
+		// (values, offset, values, offset) folded into (values, offset)
+		MethodHandle kernel = MethodHandles.collectArguments(store, 0, convert);
+		return MethodHandles.permuteArguments(kernel, MethodType.methodType(void.class, double[].class, int.class),
+				0, 1, 0, 1);
+	}
+
+	static void celsiusToFahrenheit(double[] values, int offset, int length) {
+		int end = offset + length;
+		int vectorEnd = offset + length - length % LANES;
+		int i = offset;
+		try {
+			for (; i < vectorEnd; i += LANES) {
+				KERNEL.invokeExact(values, i);
+			}
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+		// Remaining tail that does not fill a whole vector
+		TemperatureConversions.scalarCelsiusToFahrenheit(values, i, end - i);
+	}
+}
+
+//Provider reading a varying temperature, standing in for a sensor
+class SampleTemperatureProvider implements TemperatureProvider {
+	private double next;
+
+	@Override
+	public double getTemperatureCelsius() {
+		next = next >= 40 ? -10 : next + 0.25;
+		return next;
+	}
+}
+
+//Compares the per-reading adapter path against batch conversion
+class BatchTemperatureBenchmark {
+	private static final int READINGS = 4096;
+	private static final int ITERATIONS = 20_000;
+	private static final int ROUNDS = 5;
+
+	static void run() {
+		FahrenheitTemperatureProvider adapter = new TemperatureAdapter(new SampleTemperatureProvider());
+		double[] readings = new double[READINGS];
+		// Every filled batch is consumed, so none of its stores can be dropped
+		Blackhole blackhole = new Blackhole();
+
+		long perReading = Long.MAX_VALUE;
+		long batch = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int n = 0; n < ITERATIONS; n++) {
+				for (int i = 0; i < READINGS; i++) {
+					readings[i] = adapter.getTemperatureFahrenheit();
+				}
+				blackhole.consume(readings);
+			}
+			perReading = Math.min(perReading, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			for (int n = 0; n < ITERATIONS; n++) {
+				adapter.getTemperaturesFahrenheit(readings, 0, READINGS);
+				blackhole.consume(readings);
+			}
+			batch = Math.min(batch, System.nanoTime() - start);
+		}
+
+		// Conversion only, the part the Vector API speeds up
+		double[] celsius = new double[READINGS];
+		Arrays.setAll(celsius, i -> i * 0.01);
+		long scalar = Long.MAX_VALUE;
+		long converted = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int n = 0; n < ITERATIONS; n++) {
+				System.arraycopy(celsius, 0, readings, 0, READINGS);
+				TemperatureConversions.scalarCelsiusToFahrenheit(readings, 0, READINGS);
+				blackhole.consume(readings);
+			}
+			scalar = Math.min(scalar, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			for (int n = 0; n < ITERATIONS; n++) {
+				System.arraycopy(celsius, 0, readings, 0, READINGS);
+				TemperatureConversions.celsiusToFahrenheit(readings, 0, READINGS);
+				blackhole.consume(readings);
+			}
+			converted = Math.min(converted, System.nanoTime() - start);
+		}
+
+		long total = (long) READINGS * ITERATIONS;
+		System.out.println("Vector API available: " + TemperatureConversions.VECTORIZED);
+		System.out.printf("%-34s %6.3f ns/reading%n", "per-reading adapter", (double) perReading / total);
+		System.out.printf("%-34s %6.3f ns/reading%n", "batch adapter", (double) batch / total);
+		System.out.printf("%-34s %6.3f ns/reading%n", "scalar in-place conversion", (double) scalar / total);
+		System.out.printf("%-34s %6.3f ns/reading%n", "dispatched in-place conversion", (double) converted / total);
+	}
+}
+
+public class BatchTemperatureExample {
+	public static void main(String[] args) {
+		FahrenheitTemperatureProvider adapter = new TemperatureAdapter(new CelciusTemperatureProvider());
+
+		double[] readings = new double[8];
+		adapter.getTemperaturesFahrenheit(readings, 0, readings.length);
+		System.out.println("Temperatures in Fahrenheit: " + Arrays.toString(readings));
+
+		if (args.length > 0 && args[0].equals("--benchmark")) {
+			BatchTemperatureBenchmark.run();
+		}
+	}
+}
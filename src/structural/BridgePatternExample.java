@@ -1,5 +1,9 @@
 package structural;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 /**
  * The Bridge Design Pattern is a structural design pattern that decouples an
  * abstraction from its implementation so that the two can vary independently.
@@ -14,21 +18,56 @@ package structural;
 //Implementor interface
 interface Color {
 	String fill();
+
+	// Writes the fill text as UTF-8 into out
+	default void fill(ByteBuffer out) {
+		out.put(fill().getBytes(StandardCharsets.UTF_8));
+	}
+
+	default void fill(Appendable out) throws IOException {
+		out.append(fill());
+	}
 }
 
 //Concrete Implementor
 class RedColor implements Color {
+	private static final String FILL = "Coloring the shape with Red color";
+	private static final byte[] FILL_BYTES = FILL.getBytes(StandardCharsets.UTF_8);
+
 	@Override
 	public String fill() {
-		return "Coloring the shape with Red color";
+		return FILL;
+	}
+
+	@Override
+	public void fill(ByteBuffer out) {
+		out.put(FILL_BYTES);
+	}
+
+	@Override
+	public void fill(Appendable out) throws IOException {
+		out.append(FILL);
 	}
 }
 
 //Concrete Implementor
 class BlueColor implements Color {
+	private static final String FILL = "Coloring the shape with Blue color";
+	private static final byte[] FILL_BYTES = FILL.getBytes(StandardCharsets.UTF_8);
+
 	@Override
 	public String fill() {
-		return "Coloring the shape with Blue color";
+		return FILL;
+	}
+
+	@Override
+	public void fill(ByteBuffer out) {
+		out.put(FILL_BYTES);
+	}
+
+	@Override
+	public void fill(Appendable out) throws IOException {
+		out.append(FILL);
 	}
 }
 
@@ -41,29 +80,68 @@ abstract class Shape {
 	}
 
 	abstract String draw();
+
+	// Writes the drawing as UTF-8 into out; subclasses write their parts without building a String
+	void draw(ByteBuffer out) {
+		out.put(draw().getBytes(StandardCharsets.UTF_8));
+	}
+
+	void draw(Appendable out) throws IOException {
+		out.append(draw());
+	}
 }
 
 //Refined Abstraction
 class Square extends Shape {
+	private static final String PREFIX = "Drawing Square. ";
+	private static final byte[] PREFIX_BYTES = PREFIX.getBytes(StandardCharsets.UTF_8);
+
 	public Square(Color color) {
 		super(color);
 	}
 
 	@Override
 	String draw() {
-		return "Drawing Square. " + color.fill();
+		return PREFIX + color.fill();
+	}
+
+	@Override
+	void draw(ByteBuffer out) {
+		out.put(PREFIX_BYTES);
+		color.fill(out);
+	}
+
+	@Override
+	void draw(Appendable out) throws IOException {
+		out.append(PREFIX);
+		color.fill(out);
 	}
 }
 
 //Refined Abstraction
 class Circle extends Shape {
+	private static final String PREFIX = "Drawing Circle. ";
+	private static final byte[] PREFIX_BYTES = PREFIX.getBytes(StandardCharsets.UTF_8);
+
 	public Circle(Color color) {
 		super(color);
 	}
 
 	@Override
 	String draw() {
-		return "Drawing Circle. " + color.fill();
+		return PREFIX + color.fill();
+	}
+
+	@Override
+	void draw(ByteBuffer out) {
+		out.put(PREFIX_BYTES);
+		color.fill(out);
+	}
+
+	@Override
+	void draw(Appendable out) throws IOException {
+		out.append(PREFIX);
+		color.fill(out);
 	}
 }
 
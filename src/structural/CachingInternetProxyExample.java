@@ -0,0 +1,535 @@
+package structural;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * A caching proxy keeps the pages it fetched, so repeated browses of the same
+ * site do not reach the real Internet again. The cache is bounded by the total
+ * size of the pages and uses W-TinyLFU: new pages enter a small LRU window,
+ * and when the window overflows its oldest page only replaces the least
+ * recently used page of the main region if a frequency sketch says it has been
+ * requested more often. This keeps popular sites cached even under scans of
+ * one-off sites. The sketch is sized from the expected number of pages and
+ * grows when the cache holds more. Every page also expires after its own time
+ * to live, and concurrent browses of the same uncached site share a single
+ * upstream fetch.
+ */
+//Approximate access frequencies in 4-bit counters (count-min sketch), halved periodically
+final class FrequencySketch {
+	private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+			0xcbf29ce484222325L };
+	private static final long RESET_MASK = 0x7777777777777777L;
+
+	private long[] table;
+	private int counterMask;
+	private int sampleSize;
+	private int additions;
+
+	FrequencySketch(int expectedEntries) {
+		allocate(expectedEntries);
+	}
+
+	private void allocate(int expectedEntries) {
+		int entries = Math.max(16, Math.min(expectedEntries, 1 << 30));
+		int counters = Integer.highestOneBit(entries - 1) << 1;
+		this.table = new long[Math.max(1, counters >>> 4) + 1];
+		this.counterMask = counters - 1;
+		this.sampleSize = 10 * entries;
+		this.additions = 0;
+	}
+
+	// Grows the sketch to track entries distinct keys; the recorded frequencies start over
+	void ensureCapacity(int entries) {
+		if (entries > counterMask + 1) {
+			allocate(entries);
+		}
+	}
+
+	int frequency(Object key) {
+		int hash = spread(key.hashCode());
+		int frequency = 15;
+		for (int i = 0; i < SEEDS.length; i++) {
+			int index = indexOf(hash, i);
+			int count = (int) ((table[index >>> 4] >>> ((index & 15) << 2)) & 0xF);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	void increment(Object key) {
+		int hash = spread(key.hashCode());
+		boolean added = false;
+		for (int i = 0; i < SEEDS.length; i++) {
+			int index = indexOf(hash, i);
+			int shift = (index & 15) << 2;
+			if (((table[index >>> 4] >>> shift) & 0xF) < 15) {
+				table[index >>> 4] += 1L << shift;
+				added = true;
+			}
+		}
+		if (added && ++additions >= sampleSize) {
+			reset();
+		}
+	}
+
+	// Ages all counters so the sketch follows changes in popularity
+	private void reset() {
+		for (int i = 0; i < table.length; i++) {
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		additions /= 2;
+	}
+
+	private int indexOf(int hash, int row) {
+		long h = (hash + SEEDS[row]) * SEEDS[row];
+		h += h >>> 32;
+		return (int) h & counterMask;
+	}
+
+	private static int spread(int hash) {
+		hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+		return (hash >>> 16) ^ hash;
+	}
+}
+
+//Bounded, size-aware cache with W-TinyLFU admission, per-entry TTL and single-flight loads
+class TinyLfuCache<K, V> {
+	private static final int WINDOW = 0;
+	private static final int PROBATION = 1;
+	private static final int PROTECTED = 2;
+	private static final int REMOVED = -1;
+
+	// Returns how long a freshly loaded value stays valid
+	interface Expiry<K, V> {
+		long expireAfterNanos(K key, V value);
+	}
+
+	private static final class Node<K, V> {
+		final K key;
+		final V value;
+		final int weight;
+		final long expireAtNanos;
+		int queue;
+		Node<K, V> prev;
+		Node<K, V> next;
+
+		Node(K key, V value, int weight, long expireAtNanos) {
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+			this.expireAtNanos = expireAtNanos;
+		}
+
+		boolean isExpired(long now) {
+			return now - expireAtNanos >= 0;
+		}
+	}
+
+	// Intrusive LRU list, head is the least recently used entry
+	private static final class AccessQueue<K, V> {
+		Node<K, V> head;
+		Node<K, V> tail;
+		long weight;
+
+		void addLast(Node<K, V> node) {
+			node.prev = tail;
+			node.next = null;
+			if (tail == null) {
+				head = node;
+			} else {
+				tail.next = node;
+			}
+			tail = node;
+			weight += node.weight;
+		}
+
+		void unlink(Node<K, V> node) {
+			if (node.prev == null) {
+				head = node.next;
+			} else {
+				node.prev.next = node.next;
+			}
+			if (node.next == null) {
+				tail = node.prev;
+			} else {
+				node.next.prev = node.prev;
+			}
+			node.prev = null;
+			node.next = null;
+			weight -= node.weight;
+		}
+	}
+
+	private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+	private final Function<? super K, ? extends V> loader;
+	private final ToIntFunction<? super V> weigher;
+	private final Expiry<? super K, ? super V> expiry;
+
+	// Guards the queues and the sketch; reads only try to take it
+	private final ReentrantLock evictionLock = new ReentrantLock();
+	private final FrequencySketch sketch;
+	@SuppressWarnings("unchecked")
+	private final AccessQueue<K, V>[] queues = (AccessQueue<K, V>[]) new AccessQueue<?, ?>[] { new AccessQueue<>(),
+			new AccessQueue<>(), new AccessQueue<>() };
+	private final long maximumWeight;
+	private final long windowMaximum;
+	private final long protectedMaximum;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder loads = new LongAdder();
+	private final LongAdder loadFailures = new LongAdder();
+	private final LongAdder totalLoadNanos = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	TinyLfuCache(long maximumWeight, int expectedEntries, Function<? super K, ? extends V> loader,
+			ToIntFunction<? super V> weigher, Expiry<? super K, ? super V> expiry) {
+		if (maximumWeight <= 0) {
+			throw new IllegalArgumentException("Maximum weight must be positive: " + maximumWeight);
+		}
+		this.maximumWeight = maximumWeight;
+		this.windowMaximum = Math.max(1, maximumWeight / 100);
+		this.protectedMaximum = (maximumWeight - windowMaximum) * 4 / 5;
+		this.sketch = new FrequencySketch(expectedEntries);
+		this.loader = loader;
+		this.weigher = weigher;
+		this.expiry = expiry;
+	}
+
+	public V get(K key) {
+		Node<K, V> node = data.get(key);
+		if (node != null && !node.isExpired(System.nanoTime())) {
+			hits.increment();
+			afterRead(node);
+			return node.value;
+		}
+		misses.increment();
+		return load(key);
+	}
+
+	// Loads the value once, however many threads miss on the key at the same time
+	private V load(K key) {
+		CompletableFuture<V> future = new CompletableFuture<>();
+		CompletableFuture<V> running = loading.putIfAbsent(key, future);
+		if (running != null) {
+			try {
+				return running.join();
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof Error) {
+					throw (Error) e.getCause();
+				}
+				throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+			}
+		}
+		try {
+			// Another thread may have finished loading between our miss and putIfAbsent
+			Node<K, V> node = data.get(key);
+			V value;
+			if (node != null && !node.isExpired(System.nanoTime())) {
+				value = node.value;
+			} else {
+				long start = System.nanoTime();
+				value = loader.apply(key);
+				totalLoadNanos.add(System.nanoTime() - start);
+				loads.increment();
+				put(key, value);
+			}
+			future.complete(value);
+			return value;
+		} catch (Throwable e) {
+			// Whatever the loader throws, threads waiting on the future must not hang
+			loadFailures.increment();
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			loading.remove(key, future);
+		}
+	}
+
+	private void put(K key, V value) {
+		int weight = weigher.applyAsInt(value);
+		long now = System.nanoTime();
+		// Capped so that "forever" cannot overflow the expiry time
+		long ttlNanos = Math.min(expiry.expireAfterNanos(key, value), Long.MAX_VALUE >>> 1);
+		Node<K, V> node = new Node<>(key, value, weight, now + ttlNanos);
+		evictionLock.lock();
+		try {
+			// Sized for the entries actually held, whatever their weight
+			sketch.ensureCapacity(data.size() + 1);
+			sketch.increment(key);
+			Node<K, V> old = data.put(key, node);
+			if (old != null && old.queue != REMOVED) {
+				queues[old.queue].unlink(old);
+				old.queue = REMOVED;
+			}
+			if (weight > maximumWeight) {
+				// Never fits, do not let it flush the cache
+				data.remove(key, node);
+				node.queue = REMOVED;
+				return;
+			}
+			node.queue = WINDOW;
+			queues[WINDOW].addLast(node);
+			evict(now);
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	// Records the access unless another thread holds the lock; dropped reads only age the policy
+	private void afterRead(Node<K, V> node) {
+		if (!evictionLock.tryLock()) {
+			return;
+		}
+		try {
+			sketch.increment(node.key);
+			switch (node.queue) {
+			case WINDOW:
+			case PROTECTED:
+				queues[node.queue].unlink(node);
+				queues[node.queue].addLast(node);
+				break;
+			case PROBATION:
+				queues[PROBATION].unlink(node);
+				node.queue = PROTECTED;
+				queues[PROTECTED].addLast(node);
+				// Demote the least recently used protected entries back to probation
+				while (queues[PROTECTED].weight > protectedMaximum) {
+					Node<K, V> demoted = queues[PROTECTED].head;
+					queues[PROTECTED].unlink(demoted);
+					demoted.queue = PROBATION;
+					queues[PROBATION].addLast(demoted);
+				}
+				break;
+			default:
+				// Already removed
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	private void evict(long now) {
+		// Entries leaving the window become candidates for the main region
+		Node<K, V> candidate = null;
+		while (queues[WINDOW].weight > windowMaximum) {
+			Node<K, V> node = queues[WINDOW].head;
+			queues[WINDOW].unlink(node);
+			node.queue = PROBATION;
+			queues[PROBATION].addLast(node);
+			if (candidate == null) {
+				candidate = node;
+			}
+		}
+
+		while (weightedSize() > maximumWeight) {
+			Node<K, V> victim = queues[PROBATION].head;
+			if (victim == null) {
+				victim = queues[PROTECTED].head != null ? queues[PROTECTED].head : queues[WINDOW].head;
+			}
+			if (candidate == null || candidate == victim) {
+				if (candidate == victim) {
+					candidate = victim.next;
+				}
+				remove(victim);
+				continue;
+			}
+			Node<K, V> nextCandidate = candidate.next;
+			if (candidate.isExpired(now)) {
+				remove(candidate);
+				candidate = nextCandidate;
+			} else if (victim.isExpired(now) || sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+				remove(victim);
+			} else {
+				remove(candidate);
+				candidate = nextCandidate;
+			}
+		}
+	}
+
+	private void remove(Node<K, V> node) {
+		queues[node.queue].unlink(node);
+		node.queue = REMOVED;
+		data.remove(node.key, node);
+		evictions.increment();
+	}
+
+	private long weightedSize() {
+		return queues[WINDOW].weight + queues[PROBATION].weight + queues[PROTECTED].weight;
+	}
+
+	public void invalidate(K key) {
+		evictionLock.lock();
+		try {
+			Node<K, V> node = data.remove(key);
+			if (node != null && node.queue != REMOVED) {
+				queues[node.queue].unlink(node);
+				node.queue = REMOVED;
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public double getHitRatio() {
+		long requests = hits.sum() + misses.sum();
+		return requests == 0 ? 1.0 : (double) hits.sum() / requests;
+	}
+
+	public long getLoads() {
+		return loads.sum();
+	}
+
+	public long getLoadFailures() {
+		return loadFailures.sum();
+	}
+
+	public double getAverageLoadNanos() {
+		long count = loads.sum();
+		return count == 0 ? 0 : (double) totalLoadNanos.sum() / count;
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	public long getWeightedSize() {
+		evictionLock.lock();
+		try {
+			return weightedSize();
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("TinyLfuCache{hitRatio=%.3f, hits=%d, misses=%d, loads=%d, averageLoad=%.2f ms, "
+				+ "evictions=%d}", getHitRatio(), getHits(), getMisses(), getLoads(), getAverageLoadNanos() / 1e6,
+				getEvictions());
+	}
+}
+
+//Proxy caching the pages of any Internet implementation
+class CachingInternetProxy implements Internet {
+	// Page size assumed when sizing the frequency sketch from the capacity alone
+	static final int TYPICAL_PAGE_CHARACTERS = 2048;
+
+	private final TinyLfuCache<String, String> cache;
+
+	// Pages are weighed by their length in characters
+	public CachingInternetProxy(Internet internet, long maximumCharacters, Duration ttl) {
+		this(internet, maximumCharacters, expectedPages(maximumCharacters), fixedExpiry(ttl.toNanos()));
+	}
+
+	public CachingInternetProxy(Internet internet, long maximumCharacters,
+			TinyLfuCache.Expiry<String, String> expiry) {
+		this(internet, maximumCharacters, expectedPages(maximumCharacters), expiry);
+	}
+
+	// expectedPages sizes the frequency sketch up front; it still grows if more pages are cached
+	public CachingInternetProxy(Internet internet, long maximumCharacters, int expectedPages,
+			TinyLfuCache.Expiry<String, String> expiry) {
+		this.cache = new TinyLfuCache<>(maximumCharacters, expectedPages, internet::fetch, String::length, expiry);
+	}
+
+	private static TinyLfuCache.Expiry<String, String> fixedExpiry(long ttlNanos) {
+		return (website, page) -> ttlNanos;
+	}
+
+	static int expectedPages(long maximumCharacters) {
+		return (int) Math.min(1 << 20, Math.max(16, maximumCharacters / TYPICAL_PAGE_CHARACTERS));
+	}
+
+	@Override
+	public void browse(String website) {
+		String page = fetch(website);
+		System.out.println("Browsing " + website + " (" + page.length() + " chars)");
+	}
+
+	@Override
+	public String fetch(String website) {
+		return cache.get(website);
+	}
+
+	public TinyLfuCache<String, String> getCache() {
+		return cache;
+	}
+}
+
+//Stub Internet with a configurable latency per fetch
+class SlowInternet implements Internet {
+	private final Duration latency;
+	private final LongAdder fetches = new LongAdder();
+
+	SlowInternet(Duration latency) {
+		this.latency = latency;
+	}
+
+	@Override
+	public void browse(String website) {
+		System.out.println("Browsing " + website);
+	}
+
+	@Override
+	public String fetch(String website) {
+		fetches.increment();
+		try {
+			Thread.sleep(latency.toMillis());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return "<html><title>" + website + "</title></html>";
+	}
+
+	public long getFetches() {
+		return fetches.sum();
+	}
+}
+
+public class CachingInternetProxyExample {
+	public static void main(String[] args) throws InterruptedException {
+		SlowInternet upstream = new SlowInternet(Duration.ofMillis(20));
+		CachingInternetProxy proxy = new CachingInternetProxy(upstream, 100 * 40, Duration.ofMinutes(5));
+
+		// Concurrent browses of the same site trigger a single upstream fetch
+		CountDownLatch done = new CountDownLatch(8);
+		for (int i = 0; i < 8; i++) {
+			new Thread(() -> {
+				proxy.fetch("google.com");
+				done.countDown();
+			}).start();
+		}
+		done.await();
+		System.out.println("Upstream fetches for 8 concurrent browses: " + upstream.getFetches());
+
+		// A few popular sites survive a scan of one-off sites
+		for (int round = 0; round < 20; round++) {
+			for (int popular = 0; popular < 20; popular++) {
+				proxy.fetch("popular-" + popular + ".com");
+			}
+			for (int scan = 0; scan < 20; scan++) {
+				proxy.fetch("one-off-" + round + "-" + scan + ".com");
+			}
+		}
+		proxy.browse("popular-1.com");
+		System.out.println(proxy.getCache());
+	}
+}
@@ -0,0 +1,216 @@
+package structural;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Real temperature providers read a device or a remote service, so calling
+ * them for every getTemperatureFahrenheit() is expensive. The caching provider
+ * sits between TemperatureAdapter and the real provider and serves the last
+ * reading for a configurable time to live. Once a reading is older than the
+ * refresh-ahead point it is still served, but a background refresh is started
+ * so callers rarely see an expired reading. When the reading has expired,
+ * concurrent callers share a single upstream read. The hot path is one
+ * volatile read and needs no lock. A failed upstream read, whatever it throws,
+ * fails the shared result and lets the next caller try again, and a refresh the
+ * executor rejects runs on the calling thread.
+ */
+//Caching decorator for any TemperatureProvider
+class CachingTemperatureProvider implements TemperatureProvider {
+
+	// Immutable reading published through a volatile field
+	private static final class Reading {
+		final double celsius;
+		final long loadedAtNanos;
+
+		Reading(double celsius, long loadedAtNanos) {
+			this.celsius = celsius;
+			this.loadedAtNanos = loadedAtNanos;
+		}
+	}
+
+	private final TemperatureProvider provider;
+	private final long ttlNanos;
+	private final long refreshAheadNanos;
+	private final Executor refreshExecutor;
+
+	private volatile Reading current;
+	private final AtomicReference<CompletableFuture<Reading>> inFlight = new AtomicReference<>();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder staleHits = new LongAdder();
+	private final LongAdder refreshes = new LongAdder();
+
+	// Refreshes ahead once 80% of the time to live has passed
+	public CachingTemperatureProvider(TemperatureProvider provider, Duration ttl) {
+		this(provider, ttl, ttl.multipliedBy(4).dividedBy(5), ForkJoinPool.commonPool());
+	}
+
+	public CachingTemperatureProvider(TemperatureProvider provider, Duration ttl, Duration refreshAhead,
+			Executor refreshExecutor) {
+		if (ttl.isNegative() || ttl.isZero() || refreshAhead.isNegative() || refreshAhead.compareTo(ttl) > 0) {
+			throw new IllegalArgumentException("Requires 0 <= refreshAhead <= ttl and a positive ttl");
+		}
+		this.provider = provider;
+		this.ttlNanos = ttl.toNanos();
+		this.refreshAheadNanos = refreshAhead.toNanos();
+		this.refreshExecutor = refreshExecutor;
+	}
+
+	@Override
+	public double getTemperatureCelsius() {
+		Reading reading = current;
+		if (reading != null) {
+			long age = System.nanoTime() - reading.loadedAtNanos;
+			if (age < refreshAheadNanos) {
+				hits.increment();
+				return reading.celsius;
+			}
+			if (age < ttlNanos) {
+				// Still valid, but refresh in the background before it expires
+				staleHits.increment();
+				if (inFlight.get() == null) {
+					load(true);
+				}
+				return reading.celsius;
+			}
+		}
+		misses.increment();
+		try {
+			return load(false).join().celsius;
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	// Starts an upstream read unless one is already running, and returns the shared result
+	private CompletableFuture<Reading> load(boolean background) {
+		while (true) {
+			CompletableFuture<Reading> running = inFlight.get();
+			if (running != null) {
+				return running;
+			}
+			CompletableFuture<Reading> future = new CompletableFuture<>();
+			if (inFlight.compareAndSet(null, future)) {
+				if (background) {
+					refreshes.increment();
+					try {
+						refreshExecutor.execute(() -> read(future));
+					} catch (RejectedExecutionException e) {
+						// Saturated or shut down executor: refresh on this thread
+						read(future);
+					}
+				} else {
+					read(future);
+				}
+				return future;
+			}
+		}
+	}
+
+	// Always clears inFlight and completes the future, so a failed read never blocks later loads
+	private void read(CompletableFuture<Reading> future) {
+		try {
+			Reading reading = new Reading(provider.getTemperatureCelsius(), System.nanoTime());
+			current = reading;
+			inFlight.compareAndSet(future, null);
+			future.complete(reading);
+		} catch (Throwable e) {
+			inFlight.compareAndSet(future, null);
+			future.completeExceptionally(e);
+			if (e instanceof Error) {
+				throw (Error) e;
+			}
+		}
+	}
+
+	// Drops the cached reading, the next call reads upstream
+	public void invalidate() {
+		current = null;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	// Readings served past the refresh-ahead point
+	public long getStaleHits() {
+		return staleHits.sum();
+	}
+
+	public long getRefreshes() {
+		return refreshes.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "CachingTemperatureProvider{" + "hits=" + getHits() + ", misses=" + getMisses() + ", staleHits="
+				+ getStaleHits() + ", refreshes=" + getRefreshes() + '}';
+	}
+}
+
+//Provider simulating a slow device read
+class SlowTemperatureProvider implements TemperatureProvider {
+	private final LongAdder reads = new LongAdder();
+
+	@Override
+	public double getTemperatureCelsius() {
+		reads.increment();
+		try {
+			Thread.sleep(20);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return 20.0 + reads.sum() * 0.1;
+	}
+
+	public long getReads() {
+		return reads.sum();
+	}
+}
+
+public class CachingTemperatureProviderExample {
+	public static void main(String[] args) throws InterruptedException {
+		SlowTemperatureProvider device = new SlowTemperatureProvider();
+		CachingTemperatureProvider cache = new CachingTemperatureProvider(device, Duration.ofMillis(200));
+		FahrenheitTemperatureProvider adapter = new TemperatureAdapter(cache);
+
+		// Concurrent first callers share one upstream read
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(() -> adapter.getTemperatureFahrenheit());
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		System.out.println("Upstream reads after concurrent miss: " + device.getReads());
+
+		// Keep reading for a while; refresh-ahead keeps the cache warm
+		long end = System.nanoTime() + Duration.ofSeconds(1).toNanos();
+		while (System.nanoTime() < end) {
+			adapter.getTemperatureFahrenheit();
+			Thread.sleep(1);
+		}
+		System.out.println("Temperature in Fahrenheit: " + adapter.getTemperatureFahrenheit());
+		System.out.println("Upstream reads: " + device.getReads());
+		System.out.println(cache);
+	}
+}
@@ -0,0 +1,104 @@
+package structural;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+
+import benchmark.AllocationMeter;
+import benchmark.Blackhole;
+
+/**
+ * Building a decorator chain's description with string concatenation copies
+ * the description once per level and leaves a discarded String behind at every
+ * level. With appendDescription each decorator appends only its own fragment
+ * to a caller-supplied StringBuilder or other Appendable, so the caller can
+ * reuse one buffer and describe cakes without producing garbage.
+ * getDescription() is still available and is built on top of the same path.
+ * The benchmark reports the bytes allocated per description, read from the
+ * JVM's per-thread allocation counter.
+ */
+//Measures allocation and time per description
+class CakeDescriptionBenchmark {
+	private static final int CALLS = 100_000;
+	private static final int WARMUP_ROUNDS = 5;
+
+	interface Describer {
+		void describe(Cake cake);
+	}
+
+	// Description built the way decorators did before appendDescription: one concatenation per level
+	static String concatenatedDescription(Cake cake) {
+		if (cake instanceof CakeDecorator) {
+			CakeDecorator decorator = (CakeDecorator) cake;
+			return concatenatedDescription(decorator.cake) + decorator.getAddedDescription();
+		}
+		return cake.getDescription();
+	}
+
+	static void run(int depth) {
+		Cake cake = CakeChainBenchmark.buildChain(depth);
+		CompiledCake compiled = CompiledCake.compile(cake);
+		StringBuilder reused = new StringBuilder();
+		CharBuffer buffer = CharBuffer.allocate(16 + 12 * depth);
+		int calls = Math.max(100, CALLS / depth);
+		Blackhole blackhole = new Blackhole();
+
+		System.out.printf("depth %,5d%n", depth);
+		report("concatenation", calls, cake, c -> blackhole.consume(concatenatedDescription(c)));
+		report("getDescription()", calls, cake, c -> blackhole.consume(c.getDescription()));
+		report("append, reused StringBuilder", calls, cake, c -> {
+			reused.setLength(0);
+			c.appendDescription(reused);
+			blackhole.consume(reused);
+		});
+		report("append, reused CharBuffer", calls, cake, c -> {
+			buffer.clear();
+			try {
+				c.appendDescription(buffer);
+				blackhole.consume(buffer);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		report("compiled, reused StringBuilder", calls, compiled, c -> {
+			reused.setLength(0);
+			c.appendDescription(reused);
+			blackhole.consume(reused);
+		});
+	}
+
+	static void report(String name, int calls, Cake cake, Describer describer) {
+		for (int round = 0; round < WARMUP_ROUNDS; round++) {
+			for (int i = 0; i < calls; i++) {
+				describer.describe(cake);
+			}
+		}
+		long allocated = AllocationMeter.allocatedBytes();
+		long start = System.nanoTime();
+		for (int i = 0; i < calls; i++) {
+			describer.describe(cake);
+		}
+		long nanos = System.nanoTime() - start;
+		allocated = AllocationMeter.allocatedBytes() - allocated;
+		System.out.printf("  %-32s %,12.1f bytes/call %,12.1f ns/call%n", name, (double) allocated / calls,
+				(double) nanos / calls);
+	}
+}
+
+public class CakeDescriptionExample {
+	public static void main(String[] args) {
+		Cake cake = new SprinklesDecorator(new ChocolateDecorator(new SimpleCake()));
+
+		// One buffer serves any number of descriptions
+		StringBuilder out = new StringBuilder();
+		cake.appendDescription(out);
+		out.append(" costs $").append(cake.cost());
+		System.out.println(out);
+		System.out.println("Description: " + cake.getDescription());
+
+		if (args.length > 0 && args[0].equals("--benchmark")) {
+			for (int depth : new int[] { 1, 10, 100, 1_000 }) {
+				CakeDescriptionBenchmark.run(depth);
+			}
+		}
+	}
+}
@@ -0,0 +1,301 @@
+package structural;
+
+import java.lang.ref.Reference;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A CompositeGraphic keeps an ArrayList of child objects per node, so walking
+ * a large tree chases pointers all over the heap. The compact composite stores
+ * the whole tree in parallel primitive arrays instead, with nodes in pre-order:
+ * node type, first child, next sibling and subtree size. A pre-order walk is
+ * then a single linear pass over the arrays, and a subtree is the contiguous
+ * range [node, node + subtreeSize). Trees are converted from and back to
+ * regular Graphic objects without recursion.
+ */
+//Tree of graphics stored as parallel arrays in pre-order
+final class CompactGraphic implements Graphic {
+    static final byte COMPOSITE = 0;
+    static final byte ELLIPSE = 1;
+    static final byte RECTANGLE = 2;
+    static final int NONE = -1;
+
+    private final int size;
+    private final byte[] types;
+    private final int[] firstChild;
+    private final int[] nextSibling;
+    private final int[] subtreeSize;
+
+    private CompactGraphic(int size, byte[] types, int[] firstChild, int[] nextSibling, int[] subtreeSize) {
+        this.size = size;
+        this.types = types;
+        this.firstChild = firstChild;
+        this.nextSibling = nextSibling;
+        this.subtreeSize = subtreeSize;
+    }
+
+    // Flattens a tree of Ellipse, Rectangle and CompositeGraphic nodes
+    public static CompactGraphic from(Graphic root) {
+        Builder builder = new Builder();
+        // Each frame is the composite being filled and the iterator over its children
+        Deque<Iterator<Graphic>> children = new ArrayDeque<>();
+        Deque<int[]> frames = new ArrayDeque<>();
+
+        int rootIndex = builder.add(root, NONE);
+        if (root instanceof CompositeGraphic) {
+            children.push(((CompositeGraphic) root).getChildren().iterator());
+            frames.push(new int[] { rootIndex, NONE });
+        }
+        while (!children.isEmpty()) {
+            Iterator<Graphic> iterator = children.peek();
+            int[] frame = frames.peek();
+            if (!iterator.hasNext()) {
+                builder.subtreeSize[frame[0]] = builder.size - frame[0];
+                children.pop();
+                frames.pop();
+                continue;
+            }
+            Graphic graphic = iterator.next();
+            int index = builder.add(graphic, frame[0]);
+            if (frame[1] == NONE) {
+                builder.firstChild[frame[0]] = index;
+            } else {
+                builder.nextSibling[frame[1]] = index;
+            }
+            frame[1] = index;
+            if (graphic instanceof CompositeGraphic) {
+                children.push(((CompositeGraphic) graphic).getChildren().iterator());
+                frames.push(new int[] { index, NONE });
+            }
+        }
+        return builder.build();
+    }
+
+    // Rebuilds the regular object tree
+    public Graphic toGraphic() {
+        Graphic[] nodes = new Graphic[size];
+        for (int i = size - 1; i >= 0; i--) {
+            switch (types[i]) {
+            case ELLIPSE:
+                nodes[i] = new Ellipse();
+                break;
+            case RECTANGLE:
+                nodes[i] = new Rectangle();
+                break;
+            default:
+                CompositeGraphic composite = new CompositeGraphic();
+                for (int child = firstChild[i]; child != NONE; child = nextSibling[child]) {
+                    composite.add(nodes[child]);
+                }
+                nodes[i] = composite;
+            }
+        }
+        return nodes[0];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte getType(int node) {
+        return types[node];
+    }
+
+    public int getFirstChild(int node) {
+        return firstChild[node];
+    }
+
+    public int getNextSibling(int node) {
+        return nextSibling[node];
+    }
+
+    public int getSubtreeSize(int node) {
+        return subtreeSize[node];
+    }
+
+    // Leaves in the subtree of node, found in one linear pass over its range
+    public int countLeaves(int node) {
+        int leaves = 0;
+        for (int i = node, end = node + subtreeSize[node]; i < end; i++) {
+            if (types[i] != COMPOSITE) {
+                leaves++;
+            }
+        }
+        return leaves;
+    }
+
+    @Override
+    public void print() {
+        StringBuilder out = new StringBuilder();
+        render(out);
+        System.out.print(out);
+    }
+
+    // Pre-order output is a linear scan over the type array
+    @Override
+    public void render(StringBuilder out) {
+        String lineSeparator = System.lineSeparator();
+        for (int i = 0; i < size; i++) {
+            if (types[i] == ELLIPSE) {
+                out.append("Ellipse").append(lineSeparator);
+            } else if (types[i] == RECTANGLE) {
+                out.append("Rectangle").append(lineSeparator);
+            }
+        }
+    }
+
+    // Growable arrays used while flattening
+    private static final class Builder {
+        int size;
+        byte[] types = new byte[16];
+        int[] firstChild = new int[16];
+        int[] nextSibling = new int[16];
+        int[] subtreeSize = new int[16];
+
+        int add(Graphic graphic, int parent) {
+            if (size == types.length) {
+                int capacity = size + (size >> 1);
+                types = Arrays.copyOf(types, capacity);
+                firstChild = Arrays.copyOf(firstChild, capacity);
+                nextSibling = Arrays.copyOf(nextSibling, capacity);
+                subtreeSize = Arrays.copyOf(subtreeSize, capacity);
+            }
+            int index = size++;
+            types[index] = typeOf(graphic);
+            firstChild[index] = NONE;
+            nextSibling[index] = NONE;
+            subtreeSize[index] = 1;
+            return index;
+        }
+
+        CompactGraphic build() {
+            return new CompactGraphic(size, Arrays.copyOf(types, size), Arrays.copyOf(firstChild, size),
+                    Arrays.copyOf(nextSibling, size), Arrays.copyOf(subtreeSize, size));
+        }
+
+        private static byte typeOf(Graphic graphic) {
+            if (graphic instanceof CompositeGraphic) {
+                return COMPOSITE;
+            }
+            if (graphic instanceof Ellipse) {
+                return ELLIPSE;
+            }
+            if (graphic instanceof Rectangle) {
+                return RECTANGLE;
+            }
+            throw new IllegalArgumentException("Unsupported graphic: " + graphic.getClass().getName());
+        }
+    }
+}
+
+//Compares object trees with compact trees
+class CompactCompositeBenchmark {
+    private static final int ROUNDS = 5;
+
+    static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // Groups of 100 leaves, ten groups per section, under one root
+    static CompositeGraphic buildTree(int nodes) {
+        CompositeGraphic root = new CompositeGraphic();
+        CompositeGraphic section = null;
+        CompositeGraphic group = null;
+        for (int i = 1; i < nodes; i++) {
+            if (section == null || section.getChildren().size() == 10 && group.getChildren().size() == 100) {
+                section = new CompositeGraphic();
+                root.add(section);
+                group = null;
+            } else if (group == null || group.getChildren().size() == 100) {
+                group = new CompositeGraphic();
+                section.add(group);
+            } else {
+                group.add(i % 2 == 0 ? new Ellipse() : new Rectangle());
+            }
+        }
+        return root;
+    }
+
+    // Leaf count of an object tree, walked with an explicit stack
+    static int countLeaves(Graphic root) {
+        int leaves = 0;
+        Deque<Iterator<Graphic>> stack = new ArrayDeque<>();
+        stack.push(List.of(root).iterator());
+        while (!stack.isEmpty()) {
+            Iterator<Graphic> children = stack.peek();
+            if (!children.hasNext()) {
+                stack.pop();
+                continue;
+            }
+            Graphic graphic = children.next();
+            if (graphic instanceof CompositeGraphic) {
+                stack.push(((CompositeGraphic) graphic).getChildren().iterator());
+            } else {
+                leaves++;
+            }
+        }
+        return leaves;
+    }
+
+    static void run(int nodes) {
+        long before = usedHeap();
+        CompositeGraphic tree = buildTree(nodes);
+        long objectHeap = usedHeap() - before;
+
+        before = usedHeap();
+        CompactGraphic compact = CompactGraphic.from(tree);
+        long compactHeap = usedHeap() - before;
+
+        long objectNanos = Long.MAX_VALUE;
+        long compactNanos = Long.MAX_VALUE;
+        int leaves = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            leaves = countLeaves(tree);
+            objectNanos = Math.min(objectNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            leaves -= compact.countLeaves(0);
+            compactNanos = Math.min(compactNanos, System.nanoTime() - start);
+        }
+        if (leaves != 0) {
+            throw new IllegalStateException("Leaf counts differ");
+        }
+
+        System.out.printf("%,d nodes%n", compact.size());
+        System.out.printf("  object tree:  %,13d bytes, %8.1f M nodes/s%n", objectHeap,
+                compact.size() / (objectNanos / 1e3));
+        System.out.printf("  compact tree: %,13d bytes, %8.1f M nodes/s%n", compactHeap,
+                compact.size() / (compactNanos / 1e3));
+        Reference.reachabilityFence(tree);
+        Reference.reachabilityFence(compact);
+    }
+}
+
+public class CompactCompositeExample {
+    public static void main(String[] args) {
+        CompositeGraphic inner = new CompositeGraphic();
+        inner.add(new Rectangle());
+        CompositeGraphic root = new CompositeGraphic();
+        root.add(new Ellipse());
+        root.add(inner);
+
+        CompactGraphic compact = CompactGraphic.from(root);
+        compact.print();
+        System.out.println("Subtree size of root: " + compact.getSubtreeSize(0));
+        compact.toGraphic().print();
+
+        // Run with -Xmx4g for the 10 million node tree
+        if (args.length > 0 && args[0].equals("--benchmark")) {
+            CompactCompositeBenchmark.run(1_000_000);
+            CompactCompositeBenchmark.run(10_000_000);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package structural;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import benchmark.Blackhole;
+
+/**
+ * Each CakeDecorator delegates to the cake it wraps, so a stack of N
+ * decorators costs N nested virtual calls per cost() or getDescription(), and
+ * a deep enough stack overflows the thread's stack. A compiled cake flattens
+ * the stack once: the innermost non-decorator cake becomes the base, and the
+ * decorators above it become an array of added costs and an array of
+ * description fragments, evaluated by a single loop from the inside out. The
+ * additions happen in the same order as in the nested chain, so the results
+ * are identical, including floating-point rounding. Decorators that override
+ * cost() or the description methods themselves, instead of the added-cost and
+ * added-description hooks, cannot be flattened; compilation stops there and
+ * uses them as the base. The compiled form is a snapshot, so later changes to
+ * a decorator's wrapped cake do not affect it.
+ */
+//Flat, immutable form of a decorator stack
+final class CompiledCake implements Cake {
+	// Whether a decorator class relies on the additive hooks of CakeDecorator
+	private static final ClassValue<Boolean> ADDITIVE = new ClassValue<>() {
+		@Override
+		protected Boolean computeValue(Class<?> type) {
+			try {
+				return declaredBy(type, CakeDecorator.class, "cost")
+						&& declaredBy(type, CakeDecorator.class, "getDescription")
+						&& declaredBy(type, CakeDecorator.class, "appendDescription", Appendable.class)
+						&& declaredBy(type, Cake.class, "appendDescription", StringBuilder.class);
+			} catch (NoSuchMethodException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		private boolean declaredBy(Class<?> type, Class<?> owner, String name, Class<?>... parameters)
+				throws NoSuchMethodException {
+			return type.getMethod(name, parameters).getDeclaringClass() == owner;
+		}
+	};
+
+	private final Cake base;
+	private final double[] costs;
+	private final String[] fragments;
+	private final int fragmentsLength;
+
+	private CompiledCake(Cake base, double[] costs, String[] fragments) {
+		this.base = base;
+		this.costs = costs;
+		this.fragments = fragments;
+		int length = 0;
+		for (String fragment : fragments) {
+			length += fragment.length();
+		}
+		this.fragmentsLength = length;
+	}
+
+	// Unwraps the decorators iteratively, outermost first
+	public static CompiledCake compile(Cake cake) {
+		if (cake instanceof CompiledCake) {
+			return (CompiledCake) cake;
+		}
+		List<CakeDecorator> decorators = new ArrayList<>();
+		Cake current = cake;
+		while (current instanceof CakeDecorator && ADDITIVE.get(current.getClass())) {
+			CakeDecorator decorator = (CakeDecorator) current;
+			decorators.add(decorator);
+			current = decorator.cake;
+		}
+
+		int inner = 0;
+		Cake base = current;
+		if (current instanceof CompiledCake) {
+			CompiledCake compiled = (CompiledCake) current;
+			base = compiled.base;
+			inner = compiled.costs.length;
+		}
+		double[] costs = new double[inner + decorators.size()];
+		String[] fragments = new String[costs.length];
+		if (inner > 0) {
+			System.arraycopy(((CompiledCake) current).costs, 0, costs, 0, inner);
+			System.arraycopy(((CompiledCake) current).fragments, 0, fragments, 0, inner);
+		}
+		for (int i = inner, d = decorators.size() - 1; d >= 0; i++, d--) {
+			costs[i] = decorators.get(d).getAddedCost();
+			fragments[i] = decorators.get(d).getAddedDescription();
+		}
+		return new CompiledCake(base, costs, fragments);
+	}
+
+	@Override
+	public String getDescription() {
+		StringBuilder description = new StringBuilder(16 + fragmentsLength);
+		appendDescription(description);
+		return description.toString();
+	}
+
+	@Override
+	public void appendDescription(Appendable out) throws IOException {
+		base.appendDescription(out);
+		for (String fragment : fragments) {
+			out.append(fragment);
+		}
+	}
+
+	@Override
+	public double cost() {
+		double cost = base.cost();
+		for (double added : costs) {
+			cost += added;
+		}
+		return cost;
+	}
+
+	public Cake getBase() {
+		return base;
+	}
+
+	// Number of flattened decorators
+	public int getDepth() {
+		return costs.length;
+	}
+}
+
+//Compares nested decorator chains with their compiled form
+class CakeChainBenchmark {
+	private static final int ROUNDS = 5;
+
+	static Cake buildChain(int depth) {
+		Cake cake = new SimpleCake();
+		for (int i = 0; i < depth; i++) {
+			cake = i % 2 == 0 ? new ChocolateDecorator(cake) : new SprinklesDecorator(cake);
+		}
+		return cake;
+	}
+
+	static void run(int depth) {
+		Cake nested = buildChain(depth);
+		CompiledCake compiled = CompiledCake.compile(nested);
+		if (nested.cost() != compiled.cost() || !nested.getDescription().equals(compiled.getDescription())) {
+			throw new IllegalStateException("Compiled cake differs from the nested chain at depth " + depth);
+		}
+
+		int costCalls = Math.max(10, 10_000_000 / depth);
+		int descriptionCalls = Math.max(3, 100_000 / depth);
+		System.out.printf("depth %,6d  cost(): nested %,12.1f ns, compiled %,10.1f ns"
+				+ "  getDescription(): nested %,14.1f ns, compiled %,12.1f ns%n", depth, timeCost(nested, costCalls),
+				timeCost(compiled, costCalls), timeDescription(nested, descriptionCalls),
+				timeDescription(compiled, descriptionCalls));
+	}
+
+	static double timeCost(Cake cake, int calls) {
+		Blackhole blackhole = new Blackhole();
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < calls; i++) {
+				blackhole.consume(cake.cost());
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return (double) best / calls;
+	}
+
+	static double timeDescription(Cake cake, int calls) {
+		Blackhole blackhole = new Blackhole();
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < calls; i++) {
+				blackhole.consume(cake.getDescription());
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return (double) best / calls;
+	}
+}
+
+public class CompiledCakeExample {
+	public static void main(String[] args) throws InterruptedException {
+		Cake cake = new SprinklesDecorator(new ChocolateDecorator(new ChocolateDecorator(new SimpleCake())));
+		CompiledCake compiled = CompiledCake.compile(cake);
+		System.out.println("Description: " + compiled.getDescription());
+		System.out.println("Cost: $" + compiled.cost());
+		System.out.println("Matches nested chain: "
+				+ (compiled.cost() == cake.cost() && compiled.getDescription().equals(cake.getDescription())));
+
+		if (args.length > 0 && args[0].equals("--benchmark")) {
+			// Nested chains recurse once per decorator, so they get a large stack
+			Thread benchmark = new Thread(null, () -> {
+				for (int depth : new int[] { 1, 10, 100, 1_000, 10_000 }) {
+					CakeChainBenchmark.run(depth);
+				}
+			}, "cake-benchmark", 1L << 28);
+			benchmark.start();
+			benchmark.join();
+		}
+	}
+}
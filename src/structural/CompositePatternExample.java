@@ -1,7 +1,16 @@
 package structural;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * The Composite Pattern is a structural design pattern that allows you to
@@ -16,33 +25,265 @@ import java.util.List;
 // Component
 interface Graphic {
     void print();
+
+    // Appends the same output as print() to out. The default captures what print() writes to System.out;
+    // graphics that can append their output directly override it
+    default void render(StringBuilder out) {
+        out.append(PrintCapture.capture(this::print));
+    }
+}
+
+// Redirects System.out to collect the output of a print() call
+final class PrintCapture {
+    private PrintCapture() {
+    }
+
+    // Captures are serialized, since System.out is shared by the whole JVM. Anything other threads
+    // print meanwhile is captured as well.
+    static synchronized String capture(Runnable print) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream original = System.out;
+        System.setOut(new PrintStream(bytes, true, StandardCharsets.UTF_8));
+        try {
+            print.run();
+        } finally {
+            System.out.flush();
+            System.setOut(original);
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+}
+
+// Base of the built-in graphics, tracking changes so composites can cache their output.
+// A graphic belongs to at most one composite; mutation is not thread-safe.
+abstract class TrackedGraphic implements Graphic {
+    private CompositeGraphic parent;
+
+    void setParent(CompositeGraphic parent) {
+        this.parent = parent;
+    }
+
+    CompositeGraphic getParent() {
+        return parent;
+    }
+
+    // Call after changing anything that affects the output; marks every ancestor dirty
+    public void markDirty() {
+        invalidate();
+        // Ancestors of a dirty composite are dirty as well, so stop at the first one
+        CompositeGraphic ancestor = parent;
+        while (ancestor != null && ancestor.invalidate()) {
+            ancestor = ancestor.getParent();
+        }
+    }
+
+    // Drops cached output; returns false if there was none
+    boolean invalidate() {
+        return false;
+    }
+}
+
+// Counters of the cached rendering of composites
+final class RenderCounters {
+    // Large clean composites replayed segment by segment; small ones are not visited
+    static final LongAdder CACHED_COMPOSITES = new LongAdder();
+    static final LongAdder RECOMPUTED_COMPOSITES = new LongAdder();
+    static final LongAdder RENDERED_LEAVES = new LongAdder();
+
+    private RenderCounters() {
+    }
+
+    static void reset() {
+        CACHED_COMPOSITES.reset();
+        RECOMPUTED_COMPOSITES.reset();
+        RENDERED_LEAVES.reset();
+    }
+
+    static String summary() {
+        return "visited cached composites=" + CACHED_COMPOSITES.sum() + ", recomputed composites=" + RECOMPUTED_COMPOSITES.sum()
+                + ", rendered leaves=" + RENDERED_LEAVES.sum();
+    }
 }
 
 // Leaf
-class Ellipse implements Graphic {
+class Ellipse extends TrackedGraphic {
     public void print() {
         System.out.println("Ellipse");
     }
+
+    public void render(StringBuilder out) {
+        out.append("Ellipse").append(System.lineSeparator());
+    }
 }
 
 // Leaf
-class Rectangle implements Graphic {
+class Rectangle extends TrackedGraphic {
     public void print() {
         System.out.println("Rectangle");
     }
+
+    public void render(StringBuilder out) {
+        out.append("Rectangle").append(System.lineSeparator());
+    }
 }
 
 // Composite
-class CompositeGraphic implements Graphic {
+class CompositeGraphic extends TrackedGraphic {
+    // Subtrees whose output is at most this many chars are flattened into their parent's cache
+    static final int INLINE_LIMIT = 1024;
+
     private List<Graphic> graphics = new ArrayList<>();
+    // Cached output while clean, null while dirty: Strings holding the rendered leaves and small
+    // child subtrees between two large child composites, and the large child composites
+    // themselves. A composite within INLINE_LIMIT caches at most one String.
+    private Object[] segments;
+    // Length of the cached output of the whole subtree
+    private long length;
+    // Number of graphics in the subtree, this composite included; -1 while dirty
+    private long size = -1;
 
     public void add(Graphic graphic) {
         graphics.add(graphic);
+        if (graphic instanceof TrackedGraphic) {
+            ((TrackedGraphic) graphic).setParent(this);
+        }
+        markDirty();
     }
 
+    public boolean remove(Graphic graphic) {
+        if (!graphics.remove(graphic)) {
+            return false;
+        }
+        if (graphic instanceof TrackedGraphic) {
+            ((TrackedGraphic) graphic).setParent(null);
+        }
+        markDirty();
+        return true;
+    }
+
+    // Output is rendered from the cache, only changed composites are recomputed
     public void print() {
+        StringBuilder out = new StringBuilder();
+        render(out);
+        System.out.print(out);
+    }
+
+    @Override
+    boolean invalidate() {
+        boolean wasClean = segments != null || size >= 0;
+        segments = null;
+        size = -1;
+        return wasClean;
+    }
+
+    // Counts the graphics of this subtree; cached like the output and dropped by the same changes
+    long getSubtreeSize() {
+        if (size < 0) {
+            updateDirty(composite -> composite.size < 0, CompositeGraphic::count);
+        }
+        return size;
+    }
+
+    private void count() {
+        long total = 1;
         for (Graphic graphic : graphics) {
-            graphic.print();
+            total += graphic instanceof CompositeGraphic ? ((CompositeGraphic) graphic).size : 1;
+        }
+        size = total;
+    }
+
+    // Recomposes the dirty composites, then replays the cached segments. A small clean subtree
+    // is a single append; every large composite is still visited, so a render costs one step
+    // per composite with more than INLINE_LIMIT chars of output plus the recomposed ones,
+    // not per level of the changed path alone. Both walks use an explicit stack, so deep
+    // nesting cannot overflow the call stack.
+    public void render(StringBuilder out) {
+        if (segments == null) {
+            updateDirty(composite -> composite.segments == null, CompositeGraphic::compose);
+        }
+        Deque<RenderFrame> stack = new ArrayDeque<>();
+        stack.push(new RenderFrame(this));
+        while (!stack.isEmpty()) {
+            RenderFrame frame = stack.peek();
+            Object[] current = frame.composite.segments;
+            if (frame.next == current.length) {
+                stack.pop();
+                continue;
+            }
+            Object segment = current[frame.next++];
+            if (segment instanceof String) {
+                out.append((String) segment);
+            } else {
+                RenderCounters.CACHED_COMPOSITES.increment();
+                stack.push(new RenderFrame((CompositeGraphic) segment));
+            }
+        }
+    }
+
+    // Updates the dirty composites of this subtree bottom-up; clean subtrees are not entered
+    private void updateDirty(Predicate<CompositeGraphic> dirty, Consumer<CompositeGraphic> update) {
+        Deque<RenderFrame> stack = new ArrayDeque<>();
+        stack.push(new RenderFrame(this));
+        while (!stack.isEmpty()) {
+            RenderFrame frame = stack.peek();
+            List<Graphic> children = frame.composite.graphics;
+            if (frame.next < children.size()) {
+                Graphic child = children.get(frame.next++);
+                if (child instanceof CompositeGraphic && dirty.test((CompositeGraphic) child)) {
+                    stack.push(new RenderFrame((CompositeGraphic) child));
+                }
+            } else {
+                stack.pop();
+                update.accept(frame.composite);
+            }
+        }
+    }
+
+    // Builds the segments from the direct children, which are all clean at this point
+    private void compose() {
+        List<Object> result = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        long total = 0;
+        for (Graphic graphic : graphics) {
+            if (graphic instanceof CompositeGraphic) {
+                CompositeGraphic child = (CompositeGraphic) graphic;
+                if (child.length <= INLINE_LIMIT) {
+                    if (child.segments.length > 0) {
+                        text.append((String) child.segments[0]);
+                    }
+                    continue;
+                }
+                if (text.length() > 0) {
+                    result.add(text.toString());
+                    total += text.length();
+                    text.setLength(0);
+                }
+                result.add(child);
+                total += child.length;
+            } else {
+                RenderCounters.RENDERED_LEAVES.increment();
+                graphic.render(text);
+            }
+        }
+        if (text.length() > 0) {
+            result.add(text.toString());
+        }
+        RenderCounters.RECOMPUTED_COMPOSITES.increment();
+        segments = result.toArray();
+        length = total + text.length();
+    }
+
+    List<Graphic> getChildren() {
+        return Collections.unmodifiableList(graphics);
+    }
+
+    // Position in the segments or children of one composite being walked
+    private static final class RenderFrame {
+        final CompositeGraphic composite;
+        int next;
+
+        RenderFrame(CompositeGraphic composite) {
+            this.composite = composite;
         }
     }
 }
@@ -58,5 +299,20 @@ public class CompositePatternExample {
         compositeGraphic.add(rectangle);
 
         compositeGraphic.print();
+
+        // Only the changed branch is re-rendered, the other subtree comes from the cache
+        CompositeGraphic left = new CompositeGraphic();
+        CompositeGraphic right = new CompositeGraphic();
+        Ellipse changed = new Ellipse();
+        left.add(changed);
+        right.add(new Rectangle());
+        compositeGraphic.add(left);
+        compositeGraphic.add(right);
+        compositeGraphic.print();
+
+        RenderCounters.reset();
+        changed.markDirty();
+        compositeGraphic.print();
+        System.out.println(RenderCounters.summary());
     }
 }
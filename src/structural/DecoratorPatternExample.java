@@ -1,5 +1,8 @@
 package structural;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 /**
  * The Decorator Pattern is a structural design pattern that allows behavior to
  * be added to individual objects, dynamically, without affecting the behavior
@@ -11,6 +14,19 @@ interface Cake {
 	String getDescription();
 
 	double cost();
+
+	// Writes the description to out without building intermediate strings
+	default void appendDescription(Appendable out) throws IOException {
+		out.append(getDescription());
+	}
+
+	default void appendDescription(StringBuilder out) {
+		try {
+			appendDescription((Appendable) out);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e); // StringBuilder never throws
+		}
+	}
 }
 
 //Concrete component class
@@ -20,6 +36,11 @@ class SimpleCake implements Cake {
 		return "Simple Cake";
 	}
 
+	@Override
+	public void appendDescription(Appendable out) throws IOException {
+		out.append("Simple Cake");
+	}
+
 	@Override
 	public double cost() {
 		return 10.0;
@@ -37,12 +58,31 @@ abstract class CakeDecorator implements Cake {
 
 	@Override
 	public String getDescription() {
-		return cake.getDescription();
+		StringBuilder description = new StringBuilder();
+		appendDescription(description);
+		return description.toString();
+	}
+
+	// Each decorator appends only its own fragment after the wrapped cake's description
+	@Override
+	public void appendDescription(Appendable out) throws IOException {
+		cake.appendDescription(out);
+		out.append(getAddedDescription());
 	}
 
 	@Override
 	public double cost() {
-		return cake.cost();
+		return cake.cost() + getAddedCost();
+	}
+
+	// Fragment this decorator appends to the description of the wrapped cake
+	protected String getAddedDescription() {
+		return "";
+	}
+
+	// Amount this decorator adds to the cost of the wrapped cake
+	protected double getAddedCost() {
+		return 0.0;
 	}
 }
 
@@ -54,13 +94,13 @@ class ChocolateDecorator extends CakeDecorator {
 	}
 
 	@Override
-	public String getDescription() {
-		return cake.getDescription() + ", Chocolate";
+	protected String getAddedDescription() {
+		return ", Chocolate";
 	}
 
 	@Override
-	public double cost() {
-		return cake.cost() + 5.0; // Adding the cost of chocolate
+	protected double getAddedCost() {
+		return 5.0; // Adding the cost of chocolate
 	}
 }
 
@@ -71,13 +111,13 @@ class SprinklesDecorator extends CakeDecorator {
 	}
 
 	@Override
-	public String getDescription() {
-		return cake.getDescription() + ", Sprinkles";
+	protected String getAddedDescription() {
+		return ", Sprinkles";
 	}
 
 	@Override
-	public double cost() {
-		return cake.cost() + 3.0; // Adding the cost of sprinkles
+	protected double getAddedCost() {
+		return 3.0; // Adding the cost of sprinkles
 	}
 }
 
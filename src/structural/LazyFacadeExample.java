@@ -0,0 +1,284 @@
+package structural;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import benchmark.AllocationMeter;
+
+/**
+ * The Facade constructor creates all of its subsystems up front, even for
+ * callers that only ever use one of them. The lazy facade creates each
+ * subsystem on first use, with double-checked locking so that concurrent
+ * callers still get a single instance, and releases subsystems that have not
+ * been used for a configurable idle period. The periodic idle check holds its
+ * facade only weakly and cancels itself once the facade has been collected, so
+ * a facade that is never closed does not stay reachable from the scheduler.
+ * Constructing a lazy facade does no bookkeeping beyond storing the idle
+ * check, so its startup can be compared with the eager Facade; the number of
+ * resident subsystems and the heap bytes allocated for them are reported too.
+ * The metrics count a subsystem as released when its facade drops it through
+ * the idle check or close(); a facade discarded without close() keeps its
+ * subsystems counted.
+ */
+//Counters shared by all lazy facades
+class FacadeMetrics {
+	final LongAdder created = new LongAdder();
+	final LongAdder released = new LongAdder();
+	final LongAdder residentBytes = new LongAdder();
+
+	public long getCreatedSubsystems() {
+		return created.sum();
+	}
+
+	public long getReleasedSubsystems() {
+		return released.sum();
+	}
+
+	// Subsystems currently held by all facades
+	public long getResidentSubsystems() {
+		return created.sum() - released.sum();
+	}
+
+	// Heap bytes allocated while creating the subsystems currently held
+	public long getResidentBytes() {
+		return residentBytes.sum();
+	}
+
+	void created(int bytes) {
+		created.increment();
+		residentBytes.add(bytes);
+	}
+
+	void released(int bytes) {
+		released.increment();
+		residentBytes.add(-bytes);
+	}
+
+	@Override
+	public String toString() {
+		return "FacadeMetrics{" + "created=" + getCreatedSubsystems() + ", released=" + getReleasedSubsystems()
+				+ ", resident=" + getResidentSubsystems() + ", residentBytes=" + getResidentBytes() + '}';
+	}
+}
+
+//Facade that creates its subsystems on demand
+class LazyFacade implements AutoCloseable {
+	static final FacadeMetrics METRICS = new FacadeMetrics();
+
+	// One daemon thread checks the idle subsystems of every lazy facade
+	private static final ScheduledThreadPoolExecutor REAPER = new ScheduledThreadPoolExecutor(1, runnable -> {
+		Thread thread = new Thread(runnable, "lazy-facade-reaper");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	static {
+		REAPER.setRemoveOnCancelPolicy(true);
+	}
+
+	// Periodic idle check that does not keep its facade reachable
+	private static final class IdleSweeper extends WeakReference<LazyFacade> implements Runnable {
+		private final long idleNanos;
+		private volatile ScheduledFuture<?> task;
+
+		IdleSweeper(LazyFacade facade, long idleNanos) {
+			super(facade);
+			this.idleNanos = idleNanos;
+			long period = Math.max(1, idleNanos / 2);
+			this.task = REAPER.scheduleAtFixedRate(this, period, period, TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public void run() {
+			LazyFacade facade = get();
+			if (facade == null) {
+				cancel();
+			} else {
+				facade.releaseIdle(idleNanos);
+			}
+		}
+
+		void cancel() {
+			ScheduledFuture<?> current = task;
+			if (current != null) {
+				current.cancel(false);
+			}
+		}
+	}
+
+	// A subsystem created on first use, with the heap bytes its creation allocated and its last use
+	private static final class Resident<T> {
+		final T subsystem;
+		final int bytes;
+		volatile long lastUsed;
+
+		Resident(T subsystem, int bytes) {
+			this.subsystem = subsystem;
+			this.bytes = bytes;
+			this.lastUsed = System.nanoTime();
+		}
+	}
+
+	// How to create one kind of subsystem and where a facade keeps it
+	private static final class Slot<T> {
+		final Supplier<T> factory;
+		final Function<LazyFacade, Resident<T>> getter;
+		final BiConsumer<LazyFacade, Resident<T>> setter;
+
+		Slot(Supplier<T> factory, Function<LazyFacade, Resident<T>> getter,
+				BiConsumer<LazyFacade, Resident<T>> setter) {
+			this.factory = factory;
+			this.getter = getter;
+			this.setter = setter;
+		}
+	}
+
+	private static final Slot<SubsystemA> SUBSYSTEM_A = new Slot<>(SubsystemA::new, facade -> facade.subsystemA,
+			(facade, resident) -> facade.subsystemA = resident);
+	private static final Slot<SubsystemB> SUBSYSTEM_B = new Slot<>(SubsystemB::new, facade -> facade.subsystemB,
+			(facade, resident) -> facade.subsystemB = resident);
+	private static final Slot<SubsystemC> SUBSYSTEM_C = new Slot<>(SubsystemC::new, facade -> facade.subsystemC,
+			(facade, resident) -> facade.subsystemC = resident);
+	private static final Slot<?>[] SLOTS = { SUBSYSTEM_A, SUBSYSTEM_B, SUBSYSTEM_C };
+
+	// Written under the facade's lock and read without it; null until first use and after release
+	private volatile Resident<SubsystemA> subsystemA;
+	private volatile Resident<SubsystemB> subsystemB;
+	private volatile Resident<SubsystemC> subsystemC;
+	private final IdleSweeper sweeper;
+
+	// Subsystems are kept until closed
+	public LazyFacade() {
+		this(null);
+	}
+
+	// Subsystems unused for idleTimeout are released
+	public LazyFacade(Duration idleTimeout) {
+		sweeper = idleTimeout == null ? null : new IdleSweeper(this, idleTimeout.toNanos());
+	}
+
+	// Returns the slot's subsystem, creating it on first use. A new subsystem carries its creation time
+	// before it is published, so the idle check cannot release it before the caller has used it
+	private <T> T use(Slot<T> slot) {
+		Resident<T> resident = slot.getter.apply(this);
+		if (resident == null) {
+			synchronized (this) {
+				resident = slot.getter.apply(this);
+				if (resident == null) {
+					long allocated = AllocationMeter.allocatedBytes();
+					T subsystem = slot.factory.get();
+					resident = new Resident<>(subsystem, (int) (AllocationMeter.allocatedBytes() - allocated));
+					slot.setter.accept(this, resident);
+					METRICS.created(resident.bytes);
+					return subsystem;
+				}
+			}
+		}
+		resident.lastUsed = System.nanoTime();
+		return resident.subsystem;
+	}
+
+	public void operationA() {
+		use(SUBSYSTEM_A).operationA();
+	}
+
+	public void operationB() {
+		use(SUBSYSTEM_B).operationB();
+	}
+
+	public void operationC() {
+		use(SUBSYSTEM_C).operationC();
+	}
+
+	public void operationFacade() {
+		System.out.println("Facade is calling the operations of subsystems:");
+		operationA();
+		operationB();
+		operationC();
+	}
+
+	public int getResidentSubsystems() {
+		return (subsystemA != null ? 1 : 0) + (subsystemB != null ? 1 : 0) + (subsystemC != null ? 1 : 0);
+	}
+
+	// Drops subsystems unused for idleNanos; a later call recreates them
+	synchronized void releaseIdle(long idleNanos) {
+		long now = System.nanoTime();
+		for (Slot<?> slot : SLOTS) {
+			release(slot, now, idleNanos);
+		}
+	}
+
+	private <T> void release(Slot<T> slot, long now, long idleNanos) {
+		Resident<T> resident = slot.getter.apply(this);
+		if (resident != null && now - resident.lastUsed >= idleNanos) {
+			slot.setter.accept(this, null);
+			METRICS.released(resident.bytes);
+		}
+	}
+
+	@Override
+	public void close() {
+		if (sweeper != null) {
+			sweeper.cancel();
+		}
+		releaseIdle(0);
+	}
+}
+
+public class LazyFacadeExample {
+
+	static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		try (LazyFacade facade = new LazyFacade(Duration.ofMillis(100))) {
+			facade.operationA();
+			System.out.println("Resident subsystems after operationA: " + facade.getResidentSubsystems());
+			Thread.sleep(300);
+			System.out.println("Resident subsystems after idling: " + facade.getResidentSubsystems());
+		}
+
+		// Startup time and heap of many facades before any subsystem is used. The
+		// sample subsystems are empty objects; real ones holding connections or
+		// caches make the difference far larger.
+		int count = 100_000;
+		long heapBefore = usedHeap();
+		long start = System.nanoTime();
+		Facade[] eager = new Facade[count];
+		for (int i = 0; i < count; i++) {
+			eager[i] = new Facade();
+		}
+		long eagerNanos = System.nanoTime() - start;
+		long eagerHeap = usedHeap() - heapBefore;
+		Reference.reachabilityFence(eager);
+		eager = null;
+
+		heapBefore = usedHeap();
+		start = System.nanoTime();
+		LazyFacade[] lazy = new LazyFacade[count];
+		for (int i = 0; i < count; i++) {
+			lazy[i] = new LazyFacade();
+		}
+		long lazyNanos = System.nanoTime() - start;
+		long lazyHeap = usedHeap() - heapBefore;
+		Reference.reachabilityFence(lazy);
+
+		System.out.printf("Eager facades: %.1f ns startup, %d bytes heap per facade%n", (double) eagerNanos / count,
+				eagerHeap / count);
+		System.out.printf("Lazy facades:  %.1f ns startup, %d bytes heap per facade%n", (double) lazyNanos / count,
+				lazyHeap / count);
+		System.out.println(LazyFacade.METRICS);
+	}
+}
@@ -0,0 +1,529 @@
+package structural;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+import benchmark.Blackhole;
+
+/**
+ * A limiting proxy protects the real Internet from request floods. Every user
+ * gets a token bucket that refills at a fixed rate and allows short bursts, and
+ * all users together share a cap on requests in flight. The cap adapts to the
+ * measured upstream latency in the style of TCP Vegas: once per round trip
+ * the smoothed latency is compared with the best one, and while it stays close
+ * the cap grows by one, once requests start to queue upstream it shrinks by
+ * one, and failures cut it multiplicatively. The best latency is measured
+ * afresh every thousand samples, with a cut that drains the upstream queue.
+ * Requests over the rate limit are shed at once; requests over the in-flight
+ * cap wait in a bounded queue for a bounded time and are shed afterwards,
+ * returning the rate token they were granted. A release hands its slot to the
+ * longest waiting request, which queues up again if another request took the
+ * slot first. All limiter state lives in atomics updated with compare-and-set loops, so
+ * admission never takes a lock.
+ */
+//Outcome of asking the limiter for permission
+enum Admission {
+	ADMITTED, RATE_LIMITED, SHED
+}
+
+//Token bucket kept as one theoretical arrival time (GCRA) in an AtomicLong
+class TokenBucket {
+	private final long nanosPerToken;
+	private final long burstNanos;
+	// Time at which the bucket is full again
+	private final AtomicLong fullAt = new AtomicLong(Long.MIN_VALUE);
+
+	TokenBucket(double tokensPerSecond, int burst) {
+		validate(tokensPerSecond, burst);
+		this.nanosPerToken = Math.max(1, (long) (1e9 / tokensPerSecond));
+		this.burstNanos = nanosPerToken * burst;
+	}
+
+	// Rejects settings no bucket can be built from, so callers can check them before creating buckets
+	static void validate(double tokensPerSecond, int burst) {
+		if (tokensPerSecond <= 0 || burst < 1) {
+			throw new IllegalArgumentException("Rate and burst must be positive: " + tokensPerSecond + ", " + burst);
+		}
+	}
+
+	public boolean tryAcquire() {
+		return tryAcquire(System.nanoTime());
+	}
+
+	boolean tryAcquire(long now) {
+		while (true) {
+			long current = fullAt.get();
+			long next = Math.max(current, now) + nanosPerToken;
+			if (next - now > burstNanos) {
+				return false;
+			}
+			if (fullAt.compareAndSet(current, next)) {
+				return true;
+			}
+		}
+	}
+
+	// Gives back a token taken by tryAcquire for a request that was never sent
+	void refund() {
+		fullAt.addAndGet(-nanosPerToken);
+	}
+
+	// True once the bucket has refilled completely, so it can be dropped
+	boolean isIdle(long now) {
+		return fullAt.get() <= now;
+	}
+}
+
+//Cap on requests in flight that adapts to upstream latency
+class AdaptiveConcurrencyLimit {
+	// Queue estimates (requests waiting upstream) below ALPHA grow the limit, above BETA shrink it
+	private static final int ALPHA = 3;
+	private static final int BETA = 6;
+	// Samples after which the minimum latency restarts from the best one of the last interval
+	private static final int PROBE_INTERVAL = 1000;
+	// Weight of a new sample in the smoothed latency, as a shift: 1/8
+	private static final int SMOOTHING_SHIFT = 3;
+
+	private final int minLimit;
+	private final int maxLimit;
+	private final int maxQueued;
+	private final AtomicInteger limit;
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicLong minLatency = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong intervalMinLatency = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong smoothedLatency = new AtomicLong();
+	// The limit changes at most once per round trip, at the first sample after this time
+	private final AtomicLong nextUpdate = new AtomicLong(System.nanoTime());
+	private final AtomicLong samples = new AtomicLong();
+	private final ConcurrentLinkedQueue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+
+	// Thread waiting for a slot; signaled once a release has taken it off the queue
+	private static final class Waiter {
+		final Thread thread = Thread.currentThread();
+		volatile boolean signaled;
+	}
+
+	AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, int maxQueued) {
+		if (minLimit < 1 || initialLimit < minLimit || maxLimit < initialLimit || maxQueued < 0) {
+			throw new IllegalArgumentException("Invalid limits: initial=" + initialLimit + ", min=" + minLimit
+					+ ", max=" + maxLimit + ", queued=" + maxQueued);
+		}
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.maxQueued = maxQueued;
+		this.limit = new AtomicInteger(initialLimit);
+	}
+
+	public boolean tryAcquire() {
+		while (true) {
+			int current = inFlight.get();
+			if (current >= limit.get()) {
+				return false;
+			}
+			if (inFlight.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	// Waits up to maxWaitNanos for a slot, unless the wait queue is full
+	public boolean acquire(long maxWaitNanos) {
+		if (tryAcquire()) {
+			return true;
+		}
+		if (maxWaitNanos <= 0) {
+			return false;
+		}
+		if (queued.incrementAndGet() > maxQueued) {
+			queued.decrementAndGet();
+			return false;
+		}
+		Waiter waiter = new Waiter();
+		// Registered before retrying, so a release in between cannot be missed
+		waiters.add(waiter);
+		boolean acquired = false;
+		try {
+			long deadline = System.nanoTime() + maxWaitNanos;
+			while (true) {
+				if (tryAcquire()) {
+					acquired = true;
+					return true;
+				}
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0 || waiter.thread.isInterrupted()) {
+					return false;
+				}
+				LockSupport.parkNanos(this, remaining);
+				if (waiter.signaled) {
+					// Another request may take the released slot first, so queue up again
+					waiter.signaled = false;
+					waiters.add(waiter);
+				}
+			}
+		} finally {
+			// Not queued any more means a release picked this waiter; pass its slot on if unused
+			if (!waiters.remove(waiter) && !acquired) {
+				signalNext();
+			}
+			queued.decrementAndGet();
+		}
+	}
+
+	// Frees the slot and feeds the latency of the finished request into the limit
+	public void release(long latencyNanos, boolean success) {
+		inFlight.decrementAndGet();
+		if (success) {
+			onSample(Math.max(1, latencyNanos));
+		} else {
+			onFailure();
+		}
+		signalNext();
+	}
+
+	// Wakes the longest waiting request, taking it off the queue so the next release wakes another
+	private void signalNext() {
+		Waiter waiter = waiters.poll();
+		if (waiter != null) {
+			waiter.signaled = true;
+			LockSupport.unpark(waiter.thread);
+		}
+	}
+
+	private void onSample(long latency) {
+		lowerTo(intervalMinLatency, latency);
+		if (samples.incrementAndGet() % PROBE_INTERVAL == 0) {
+			// Measure the best latency afresh, in case the upstream got slower for good. Under steady load
+			// every sample of the interval may have queued upstream, so the limit is cut as well: the queue
+			// drains and the next samples lower the best latency again unless the upstream did slow down.
+			minLatency.set(intervalMinLatency.getAndSet(Long.MAX_VALUE));
+			decrease();
+		}
+		long best = lowerTo(minLatency, latency);
+		long smoothed = smooth(latency);
+
+		// Like Vegas, adjust once per round trip: a step per sample makes the limit swing with every burst
+		long now = System.nanoTime();
+		long due = nextUpdate.get();
+		if (now - due < 0 || !nextUpdate.compareAndSet(due, now + best)) {
+			return;
+		}
+		while (true) {
+			int current = limit.get();
+			// Vegas: requests queued upstream = limit * (1 - best latency / current latency)
+			double queue = current * (1 - (double) best / smoothed);
+			int next = current;
+			if (queue < ALPHA && inFlight.get() * 2 >= current) {
+				next = Math.min(maxLimit, current + 1);
+			} else if (queue > BETA) {
+				next = Math.max(minLimit, current - 1);
+			}
+			if (next == current || limit.compareAndSet(current, next)) {
+				return;
+			}
+		}
+	}
+
+	// Lowers the value to sample if that is smaller and returns the resulting value
+	private static long lowerTo(AtomicLong value, long sample) {
+		long current = value.get();
+		while (sample < current && !value.compareAndSet(current, sample)) {
+			current = value.get();
+		}
+		return Math.min(current, sample);
+	}
+
+	// Moves the smoothed latency a step toward the sample and returns it
+	private long smooth(long latency) {
+		while (true) {
+			long current = smoothedLatency.get();
+			long next = current == 0 ? latency : current + ((latency - current) >> SMOOTHING_SHIFT);
+			if (smoothedLatency.compareAndSet(current, next)) {
+				return next;
+			}
+		}
+	}
+
+	private void onFailure() {
+		decrease();
+	}
+
+	// Multiplicative decrease
+	private void decrease() {
+		while (true) {
+			int current = limit.get();
+			int next = Math.max(minLimit, current * 3 / 4);
+			if (next == current || limit.compareAndSet(current, next)) {
+				return;
+			}
+		}
+	}
+
+	public int getLimit() {
+		return limit.get();
+	}
+
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	public long getMinLatencyNanos() {
+		return minLatency.get();
+	}
+}
+
+//Per-user rate limits in front of a shared adaptive in-flight limit
+class RequestLimiter {
+	private final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+	private final Function<String, TokenBucket> newBucket;
+	private final AdaptiveConcurrencyLimit concurrency;
+	private final long maxWaitNanos;
+
+	private final LongAdder admitted = new LongAdder();
+	private final LongAdder rateLimited = new LongAdder();
+	private final LongAdder shed = new LongAdder();
+
+	RequestLimiter(double requestsPerSecondPerUser, int burst, AdaptiveConcurrencyLimit concurrency,
+			Duration maxWait) {
+		TokenBucket.validate(requestsPerSecondPerUser, burst);
+		this.newBucket = user -> new TokenBucket(requestsPerSecondPerUser, burst);
+		this.concurrency = concurrency;
+		this.maxWaitNanos = maxWait.toNanos();
+	}
+
+	// Every ADMITTED result must be followed by exactly one release()
+	public Admission acquire(String user) {
+		TokenBucket bucket = buckets.get(user);
+		if (bucket == null) {
+			bucket = buckets.computeIfAbsent(user, newBucket);
+		}
+		if (!bucket.tryAcquire()) {
+			rateLimited.increment();
+			return Admission.RATE_LIMITED;
+		}
+		if (!concurrency.acquire(maxWaitNanos)) {
+			// Not sent, so it must not count against the user's rate
+			bucket.refund();
+			shed.increment();
+			return Admission.SHED;
+		}
+		admitted.increment();
+		return Admission.ADMITTED;
+	}
+
+	public void release(long latencyNanos, boolean success) {
+		concurrency.release(latencyNanos, success);
+	}
+
+	// Drops the buckets of users that have been quiet long enough to refill
+	public void purgeIdleUsers() {
+		long now = System.nanoTime();
+		buckets.values().removeIf(bucket -> bucket.isIdle(now));
+	}
+
+	public AdaptiveConcurrencyLimit getConcurrency() {
+		return concurrency;
+	}
+
+	public long getAdmitted() {
+		return admitted.sum();
+	}
+
+	public long getRateLimited() {
+		return rateLimited.sum();
+	}
+
+	public long getShed() {
+		return shed.sum();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("RequestLimiter{admitted=%d, rateLimited=%d, shed=%d, limit=%d, minLatency=%.2f ms}",
+				getAdmitted(), getRateLimited(), getShed(), concurrency.getLimit(),
+				concurrency.getMinLatencyNanos() / 1e6);
+	}
+}
+
+//Proxy passing one user's requests through a shared limiter
+class LimitingInternetProxy implements Internet {
+	private final Internet internet;
+	private final RequestLimiter limiter;
+	private final String user;
+
+	LimitingInternetProxy(Internet internet, RequestLimiter limiter, String user) {
+		this.internet = internet;
+		this.limiter = limiter;
+		this.user = user;
+	}
+
+	@Override
+	public void browse(String website) {
+		Admission admission = limiter.acquire(user);
+		if (admission != Admission.ADMITTED) {
+			System.out.println(rejection(admission));
+			return;
+		}
+		long start = System.nanoTime();
+		boolean success = false;
+		try {
+			internet.browse(website);
+			success = true;
+		} finally {
+			limiter.release(System.nanoTime() - start, success);
+		}
+	}
+
+	@Override
+	public String fetch(String website) {
+		Admission admission = limiter.acquire(user);
+		if (admission != Admission.ADMITTED) {
+			throw new IllegalStateException(rejection(admission));
+		}
+		long start = System.nanoTime();
+		boolean success = false;
+		try {
+			String page = internet.fetch(website);
+			success = true;
+			return page;
+		} finally {
+			limiter.release(System.nanoTime() - start, success);
+		}
+	}
+
+	private String rejection(Admission admission) {
+		return admission == Admission.RATE_LIMITED ? "Request rejected. Rate limit exceeded for " + user + "."
+				: "Request rejected. Too many requests in flight.";
+	}
+}
+
+//Upstream whose latency grows once more than capacity requests are in flight
+class CongestedInternet implements Internet {
+	private final int capacity;
+	private final Duration latency;
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	CongestedInternet(int capacity, Duration latency) {
+		this.capacity = capacity;
+		this.latency = latency;
+	}
+
+	@Override
+	public void browse(String website) {
+		System.out.println("Browsing " + website);
+	}
+
+	@Override
+	public String fetch(String website) {
+		int load = inFlight.incrementAndGet();
+		try {
+			long nanos = latency.toNanos() * Math.max(capacity, load) / capacity;
+			LockSupport.parkNanos(nanos);
+			return "<html><title>" + website + "</title></html>";
+		} finally {
+			inFlight.decrementAndGet();
+		}
+	}
+}
+
+//Measures admission decisions per second through the proxy
+class LimitingProxyBenchmark {
+	private static final long DURATION_NANOS = 2_000_000_000L;
+
+	static void run(int threads) throws InterruptedException {
+		// Limits high enough to admit everything, so only the cost of the admission path is measured
+		RequestLimiter limiter = new RequestLimiter(1e9, 1_000_000,
+				new AdaptiveConcurrencyLimit(4096, 4096, 4096, 0), Duration.ZERO);
+		LongAdder decisions = new LongAdder();
+		List<Thread> workers = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			Internet proxy = new LimitingInternetProxy(new RealInternet(), limiter, "user-" + (t % 4));
+			workers.add(new Thread(() -> {
+				Blackhole blackhole = new Blackhole();
+				long end = System.nanoTime() + DURATION_NANOS;
+				long count = 0;
+				while (System.nanoTime() < end) {
+					try {
+						blackhole.consume(proxy.fetch("google.com"));
+					} catch (IllegalStateException rejected) {
+						// Counted by the limiter
+					}
+					count++;
+				}
+				decisions.add(count);
+			}));
+		}
+		for (Thread worker : workers) {
+			worker.start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		System.out.printf("%2d threads: %6.1f M requests/s, %s%n", threads,
+				decisions.sum() / (DURATION_NANOS / 1e3), limiter);
+	}
+}
+
+public class LimitingInternetProxyExample {
+	public static void main(String[] args) throws InterruptedException {
+		// Five requests per second per user with bursts of two
+		RequestLimiter limiter = new RequestLimiter(5, 2, new AdaptiveConcurrencyLimit(4, 1, 256, 64),
+				Duration.ofMillis(200));
+		Internet internet = new LimitingInternetProxy(new RealInternet(), limiter, "alice");
+		for (int i = 0; i < 4; i++) {
+			internet.browse("google.com"); // The third and fourth are rejected
+		}
+
+		// 64 clients against an upstream that slows down beyond 16 requests in flight. Vegas keeps a few
+		// requests (ALPHA to BETA) queued upstream on purpose, so the limit settles around 20 rather than at
+		// 16. The clients ask for about four times what the upstream can serve and retry a rejected request
+		// after a millisecond, so about a third of the attempts are shed: that is the limiter protecting the
+		// upstream.
+		RequestLimiter shared = new RequestLimiter(1000, 100, new AdaptiveConcurrencyLimit(4, 1, 256, 32),
+				Duration.ofMillis(50));
+		Internet upstream = new CongestedInternet(16, Duration.ofMillis(2));
+		List<Thread> clients = new ArrayList<>();
+		for (int c = 0; c < 64; c++) {
+			Internet proxy = new LimitingInternetProxy(upstream, shared, "client-" + c);
+			clients.add(new Thread(() -> {
+				for (int i = 0; i < 200; i++) {
+					try {
+						proxy.fetch("google.com");
+					} catch (IllegalStateException rejected) {
+						LockSupport.parkNanos(1_000_000);
+					}
+				}
+			}));
+		}
+		for (Thread client : clients) {
+			client.start();
+		}
+		// The limit while all clients are busy; it rises again as they finish and the load drops
+		long limitSum = 0;
+		int limitSamples = 0;
+		while (clients.get(0).isAlive()) {
+			limitSum += shared.getConcurrency().getLimit();
+			limitSamples++;
+			Thread.sleep(10);
+		}
+		for (Thread client : clients) {
+			client.join();
+		}
+		System.out.printf("Average limit under load: %.1f%n", (double) limitSum / Math.max(1, limitSamples));
+		System.out.println(shared);
+
+		if (args.length > 0 && args[0].equals("--benchmark")) {
+			for (int threads : new int[] { 1, 4, 16 }) {
+				LimitingProxyBenchmark.run(threads);
+			}
+		}
+	}
+}
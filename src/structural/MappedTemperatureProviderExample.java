@@ -0,0 +1,282 @@
+package structural;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A temperature provider fed by a sensor-capture process through a
+ * memory-mapped file. The file holds a single-producer, multi-consumer ring
+ * buffer of double samples. Before the producer overwrites any slot it
+ * stores the sequence it is about to write up to (the claimed sequence). It
+ * then writes the samples and publishes the new write sequence with a release
+ * store. Readers acquire the write sequence, read samples straight out of the
+ * mapping and then re-read the claimed sequence. A sample with sequence s is
+ * intact only if the producer has not claimed s + capacity yet. Otherwise the
+ * read is retried, like a seqlock. Nothing is copied into intermediate
+ * objects, so the latest-value, window and cursor readers do not allocate.
+ * Readers that fall more than one ring behind the producer skip the
+ * overwritten samples and count them as lost.
+ *
+ * File layout: magic and capacity in the first cache line, the write and
+ * claimed sequences in the second one, and capacity samples from byte 128 on.
+ */
+//Layout of the shared ring buffer file
+final class TemperatureRing {
+	static final int MAGIC = 0x54454d50; // "TEMP"
+	static final int CAPACITY_OFFSET = 4;
+	static final int SEQUENCE_OFFSET = 64;
+	static final int CLAIMED_OFFSET = 72;
+	static final int DATA_OFFSET = 128;
+
+	// Ordered access to the sequences inside the mapped buffer
+	static final VarHandle LONG_VIEW = MethodHandles.byteBufferViewVarHandle(long[].class,
+			ByteOrder.nativeOrder());
+
+	private TemperatureRing() {
+	}
+
+	static long fileSize(int capacity) {
+		return DATA_OFFSET + (long) capacity * Double.BYTES;
+	}
+
+	static int sampleOffset(long sequence, int mask) {
+		return DATA_OFFSET + (int) (sequence & mask) * Double.BYTES;
+	}
+
+	static MappedByteBuffer map(Path file, FileChannel.MapMode mode, long size) throws IOException {
+		StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+				? new StandardOpenOption[] { StandardOpenOption.READ }
+				: new StandardOpenOption[] { StandardOpenOption.READ, StandardOpenOption.WRITE,
+						StandardOpenOption.CREATE };
+		try (FileChannel channel = FileChannel.open(file, options)) {
+			MappedByteBuffer buffer = channel.map(mode, 0, size);
+			buffer.order(ByteOrder.nativeOrder());
+			return buffer;
+		}
+	}
+}
+
+//Single producer writing samples into the ring, e.g. the sensor-capture process
+class MappedTemperatureWriter {
+	private final MappedByteBuffer buffer;
+	private final int mask;
+	private long sequence;
+
+	public MappedTemperatureWriter(Path file, int capacity) throws IOException {
+		if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+		}
+		this.buffer = TemperatureRing.map(file, FileChannel.MapMode.READ_WRITE, TemperatureRing.fileSize(capacity));
+		this.mask = capacity - 1;
+		buffer.putInt(TemperatureRing.CAPACITY_OFFSET, capacity);
+		buffer.putInt(0, TemperatureRing.MAGIC);
+		this.sequence = (long) TemperatureRing.LONG_VIEW.getAcquire(buffer, TemperatureRing.SEQUENCE_OFFSET);
+	}
+
+	public void publish(double celsius) {
+		claim(sequence + 1);
+		buffer.putDouble(TemperatureRing.sampleOffset(sequence, mask), celsius);
+		TemperatureRing.LONG_VIEW.setRelease(buffer, TemperatureRing.SEQUENCE_OFFSET, ++sequence);
+	}
+
+	// Publishes several samples with a single sequence update
+	public void publish(double[] samples, int offset, int length) {
+		if (length > mask + 1) {
+			throw new IllegalArgumentException("Batch of " + length + " exceeds the ring capacity " + (mask + 1));
+		}
+		claim(sequence + length);
+		for (int i = 0; i < length; i++) {
+			buffer.putDouble(TemperatureRing.sampleOffset(sequence + i, mask), samples[offset + i]);
+		}
+		sequence += length;
+		TemperatureRing.LONG_VIEW.setRelease(buffer, TemperatureRing.SEQUENCE_OFFSET, sequence);
+	}
+
+	// Announces the slots up to end before any of them is overwritten
+	private void claim(long end) {
+		TemperatureRing.LONG_VIEW.setOpaque(buffer, TemperatureRing.CLAIMED_OFFSET, end);
+		VarHandle.storeStoreFence();
+	}
+}
+
+//Provider reading samples from a ring buffer file
+class MappedTemperatureProvider implements TemperatureProvider {
+
+	// Consumer position; every consumer thread uses its own cursor
+	public final class Cursor {
+		private long next;
+		private long lost;
+
+		private Cursor(long next) {
+			this.next = next;
+		}
+
+		// Copies up to length unread samples into target and returns how many were read
+		public int poll(double[] target, int offset, int length) {
+			while (true) {
+				long published = publishedSequence();
+				long oldest = claimedSequence() - capacity;
+				if (next < oldest) {
+					lost += oldest - next;
+					next = oldest;
+				}
+				int count = (int) Math.min(length, published - next);
+				for (int i = 0; i < count; i++) {
+					target[offset + i] = buffer.getDouble(TemperatureRing.sampleOffset(next + i, mask));
+				}
+				// The producer may have overwritten samples while they were copied
+				if (intact(next)) {
+					next += count;
+					return count;
+				}
+			}
+		}
+
+		// Samples overwritten before this cursor could read them
+		public long getLost() {
+			return lost;
+		}
+
+		public long getPosition() {
+			return next;
+		}
+	}
+
+	private final MappedByteBuffer buffer;
+	private final int capacity;
+	private final int mask;
+
+	public MappedTemperatureProvider(Path file) throws IOException {
+		long size = Files.size(file);
+		MappedByteBuffer header = TemperatureRing.map(file, FileChannel.MapMode.READ_ONLY, TemperatureRing.DATA_OFFSET);
+		if (header.getInt(0) != TemperatureRing.MAGIC) {
+			throw new IOException("Not a temperature ring buffer: " + file);
+		}
+		this.capacity = header.getInt(TemperatureRing.CAPACITY_OFFSET);
+		if (size < TemperatureRing.fileSize(capacity)) {
+			throw new IOException("Truncated temperature ring buffer: " + file);
+		}
+		this.buffer = TemperatureRing.map(file, FileChannel.MapMode.READ_ONLY, TemperatureRing.fileSize(capacity));
+		this.mask = capacity - 1;
+	}
+
+	long publishedSequence() {
+		return (long) TemperatureRing.LONG_VIEW.getAcquire(buffer, TemperatureRing.SEQUENCE_OFFSET);
+	}
+
+	long claimedSequence() {
+		return (long) TemperatureRing.LONG_VIEW.getOpaque(buffer, TemperatureRing.CLAIMED_OFFSET);
+	}
+
+	// Called after copying samples from first on: true if none of them was overwritten meanwhile
+	private boolean intact(long first) {
+		// Keeps the sample loads from moving below the claimed sequence load
+		VarHandle.loadLoadFence();
+		return first >= claimedSequence() - capacity;
+	}
+
+	public boolean hasSamples() {
+		return publishedSequence() > 0;
+	}
+
+	// Latest published sample
+	@Override
+	public double getTemperatureCelsius() {
+		while (true) {
+			long published = publishedSequence();
+			if (published == 0) {
+				throw new IllegalStateException("No temperature published yet");
+			}
+			double value = buffer.getDouble(TemperatureRing.sampleOffset(published - 1, mask));
+			if (intact(published - 1)) {
+				return value;
+			}
+		}
+	}
+
+	// Fills target with the latest length samples, oldest first
+	@Override
+	public void getTemperaturesCelsius(double[] target, int offset, int length) {
+		if (readWindow(target, offset, length) < length) {
+			throw new IllegalStateException("Fewer than " + length + " temperatures available");
+		}
+	}
+
+	// Copies up to length of the latest samples, oldest first, and returns how many were copied
+	public int readWindow(double[] target, int offset, int length) {
+		while (true) {
+			long published = publishedSequence();
+			int count = (int) Math.min(Math.min(length, capacity), published);
+			long first = published - count;
+			for (int i = 0; i < count; i++) {
+				target[offset + i] = buffer.getDouble(TemperatureRing.sampleOffset(first + i, mask));
+			}
+			if (intact(first)) {
+				return count;
+			}
+		}
+	}
+
+	// Cursor starting at the oldest sample still in the ring
+	public Cursor cursorAtOldest() {
+		return new Cursor(Math.max(0, publishedSequence() - capacity));
+	}
+
+	// Cursor that only sees samples published from now on
+	public Cursor cursorAtLatest() {
+		return new Cursor(publishedSequence());
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+}
+
+public class MappedTemperatureProviderExample {
+	public static void main(String[] args) throws Exception {
+		Path file = Files.createTempFile("temperatures", ".ring");
+		try {
+			MappedTemperatureWriter writer = new MappedTemperatureWriter(file, 1 << 16);
+			writer.publish(21.5);
+
+			MappedTemperatureProvider provider = new MappedTemperatureProvider(file);
+			FahrenheitTemperatureProvider adapter = new TemperatureAdapter(provider);
+			System.out.println("Temperature in Fahrenheit: " + adapter.getTemperatureFahrenheit());
+
+			// The capture process would normally be another process writing the same file
+			int samples = 1_000_000;
+			Thread producer = new Thread(() -> {
+				for (int i = 0; i < samples; i++) {
+					writer.publish(20.0 + (i % 100) * 0.1);
+				}
+			});
+
+			MappedTemperatureProvider.Cursor cursor = provider.cursorAtLatest();
+			double[] batch = new double[1024];
+			long consumed = 0;
+			long start = System.nanoTime();
+			producer.start();
+			while (producer.isAlive() || cursor.getPosition() < provider.publishedSequence()) {
+				consumed += cursor.poll(batch, 0, batch.length);
+			}
+			long elapsed = System.nanoTime() - start;
+
+			System.out.printf("Consumed %d samples, lost %d, %.0f samples/s%n", consumed, cursor.getLost(),
+					(consumed + cursor.getLost()) / (elapsed / 1e9));
+
+			double[] window = new double[4];
+			provider.getTemperaturesCelsius(window, 0, window.length);
+			System.out.println("Latest window in Celsius: " + Arrays.toString(window));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+}
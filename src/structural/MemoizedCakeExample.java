@@ -0,0 +1,146 @@
+package structural;
+
+import java.io.IOException;
+
+import benchmark.Blackhole;
+
+/**
+ * SimpleCake and the decorators never change after construction, yet every
+ * cost() and getDescription() call walks the whole decorator stack again. A
+ * memoized cake wraps a finished stack and computes its cost and description
+ * only once: either eagerly when it is created or lazily on the first call.
+ * Either way the result is published through a volatile reference to an
+ * immutable snapshot. Two threads that race on the first lazy call may both
+ * compute it, but they compute the same values and every caller sees a
+ * complete snapshot. The values are computed through a compiled form of the
+ * stack, so deep stacks do not recurse. Memoizing is opt-in because it assumes
+ * the wrapped stack is never modified.
+ */
+//Cake whose cost and description are computed once
+final class MemoizedCake implements Cake {
+	enum Mode {
+		EAGER, LAZY
+	}
+
+	// Immutable cost and description of the wrapped stack
+	private static final class Snapshot {
+		final double cost;
+		final String description;
+
+		Snapshot(Cake cake) {
+			CompiledCake compiled = CompiledCake.compile(cake);
+			this.cost = compiled.cost();
+			this.description = compiled.getDescription();
+		}
+	}
+
+	private final Cake cake;
+	private volatile Snapshot snapshot;
+
+	private MemoizedCake(Cake cake, Mode mode) {
+		this.cake = cake;
+		if (mode == Mode.EAGER) {
+			this.snapshot = new Snapshot(cake);
+		}
+	}
+
+	// An already memoized cake is reused: EAGER computes its snapshot now if it is still pending,
+	// LAZY keeps it as it is, computed or not
+	public static MemoizedCake of(Cake cake, Mode mode) {
+		if (cake instanceof MemoizedCake) {
+			MemoizedCake memoized = (MemoizedCake) cake;
+			if (mode == Mode.EAGER) {
+				memoized.snapshot();
+			}
+			return memoized;
+		}
+		return new MemoizedCake(cake, mode);
+	}
+
+	private Snapshot snapshot() {
+		Snapshot current = snapshot;
+		if (current == null) {
+			current = new Snapshot(cake);
+			snapshot = current;
+		}
+		return current;
+	}
+
+	@Override
+	public String getDescription() {
+		return snapshot().description;
+	}
+
+	@Override
+	public double cost() {
+		return snapshot().cost;
+	}
+
+	@Override
+	public void appendDescription(Appendable out) throws IOException {
+		out.append(snapshot().description);
+	}
+
+	public Cake getCake() {
+		return cake;
+	}
+
+	public boolean isComputed() {
+		return snapshot != null;
+	}
+}
+
+//Compares quoting a memoized cake with quoting its decorator stack
+class MemoizedCakeBenchmark {
+	private static final int QUOTES = 1_000_000;
+	private static final int ROUNDS = 5;
+
+	static void run(int depth) {
+		Cake cake = CakeChainBenchmark.buildChain(depth);
+		Cake memoized = MemoizedCake.of(cake, MemoizedCake.Mode.LAZY);
+		int quotes = Math.max(1_000, QUOTES / depth);
+		System.out.printf("depth %,5d  decorator stack %,12.1f ns/quote, memoized %,6.1f ns/quote%n", depth,
+				time(cake, quotes), time(memoized, quotes));
+	}
+
+	// A quote reads the cost and the description
+	static double time(Cake cake, int quotes) {
+		Blackhole blackhole = new Blackhole();
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < quotes; i++) {
+				blackhole.consume(cake.cost());
+				blackhole.consume(cake.getDescription());
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return (double) best / quotes;
+	}
+}
+
+public class MemoizedCakeExample {
+	public static void main(String[] args) {
+		Cake cake = new SprinklesDecorator(new ChocolateDecorator(new SimpleCake()));
+
+		MemoizedCake eager = MemoizedCake.of(cake, MemoizedCake.Mode.EAGER);
+		System.out.println("Eager computed before first quote: " + eager.isComputed());
+
+		MemoizedCake lazy = MemoizedCake.of(cake, MemoizedCake.Mode.LAZY);
+		System.out.println("Lazy computed before first quote: " + lazy.isComputed());
+		System.out.println("Description: " + lazy.getDescription());
+		System.out.println("Cost: $" + lazy.cost());
+		System.out.println("Lazy computed after first quote: " + lazy.isComputed());
+
+		// Asking for eager memoization of a lazy cake computes it right away
+		MemoizedCake pending = MemoizedCake.of(cake, MemoizedCake.Mode.LAZY);
+		MemoizedCake rewrapped = MemoizedCake.of(pending, MemoizedCake.Mode.EAGER);
+		System.out.println("Lazy cake requested as eager is computed: " + rewrapped.isComputed());
+
+		if (args.length > 0 && args[0].equals("--benchmark")) {
+			for (int depth : new int[] { 1, 10, 100, 1_000 }) {
+				MemoizedCakeBenchmark.run(depth);
+			}
+		}
+	}
+}
@@ -0,0 +1,285 @@
+package structural;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * CompositeGraphic.print() walks the tree recursively on one thread, which is
+ * slow for trees with millions of nodes and can overflow the stack for deeply
+ * nested ones. The parallel traversal splits the tree by subtree size, which
+ * composites cache until they change: a range of siblings is cut where half
+ * of its graphics lie on either side, and a single large composite is split
+ * into its children. The smaller part runs as a fork-join task if it holds
+ * more graphics than the threshold, so narrow but deep trees such as binary
+ * trees are parallelized as well as wide ones, while a chain stays in one
+ * task. Inside a task the graphics are walked with an explicit stack, so the
+ * depth of the tree never turns into call depth. Rendering can keep the order
+ * of a sequential print() or trade it for less bookkeeping.
+ */
+//Parallel traversal of Graphic trees on a fork-join pool
+class GraphicTraversal {
+    static final int DEFAULT_THRESHOLD = 1024;
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+
+    GraphicTraversal() {
+        this(ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+    }
+
+    GraphicTraversal(ForkJoinPool pool, int threshold) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("Threshold must be positive: " + threshold);
+        }
+        this.pool = pool;
+        this.threshold = threshold;
+    }
+
+    // Calls action for every leaf, from several threads and in no particular order
+    public void forEachLeaf(Graphic root, Consumer<? super Graphic> action) {
+        weight(root);
+        pool.invoke(new LeafTask(rootList(root), 0, 1, (leaf, out) -> action.accept(leaf), null));
+    }
+
+    // Renders the tree; ordered output is identical to print()
+    public String render(Graphic root, boolean ordered) {
+        weight(root);
+        List<Graphic> roots = rootList(root);
+        if (ordered) {
+            LeafTask task = new LeafTask(roots, 0, 1, Graphic::render, null);
+            pool.invoke(task);
+            return task.assemble();
+        }
+        StringBuffer output = new StringBuffer();
+        pool.invoke(new LeafTask(roots, 0, 1, Graphic::render, output));
+        return output.toString();
+    }
+
+    public void print(Graphic root, boolean ordered) {
+        System.out.print(render(root, ordered));
+    }
+
+    // Graphics in the subtree. Called on the root before the tasks start, so every composite has its size
+    // cached and the tasks only read it
+    private static long weight(Graphic graphic) {
+        return graphic instanceof CompositeGraphic ? ((CompositeGraphic) graphic).getSubtreeSize() : 1;
+    }
+
+    private static long weight(List<Graphic> graphics, int from, int to) {
+        long total = 0;
+        for (int i = from; i < to; i++) {
+            total += weight(graphics.get(i));
+        }
+        return total;
+    }
+
+    private static List<Graphic> rootList(Graphic root) {
+        List<Graphic> roots = new ArrayList<>(1);
+        roots.add(root);
+        return roots;
+    }
+
+    // Work done for one leaf, writing into the segment of the task that found it
+    interface LeafAction {
+        void apply(Graphic leaf, StringBuilder out);
+    }
+
+    // Handles children [from, to) of one composite
+    private final class LeafTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Graphic> nodes;
+        private final int from;
+        private final int to;
+        private final LeafAction action;
+        // Shared output for unordered rendering, null when parts keep the order
+        private final StringBuffer unorderedOutput;
+        // Output segments (StringBuilder) and forked subtasks (LeafTask) in tree order
+        private final List<Object> parts = new ArrayList<>();
+
+        LeafTask(List<Graphic> nodes, int from, int to, LeafAction action, StringBuffer unorderedOutput) {
+            this.nodes = nodes;
+            this.from = from;
+            this.to = to;
+            this.action = action;
+            this.unorderedOutput = unorderedOutput;
+        }
+
+        @Override
+        protected void compute() {
+            List<Graphic> graphics = nodes;
+            int lo = from;
+            int hi = to;
+            List<LeafTask> forked = new ArrayList<>();
+            StringBuilder out = new StringBuilder();
+            // What follows the current range in tree order: forked tasks and ranges (List) to walk afterwards
+            Deque<Object> tail = new ArrayDeque<>();
+            while (true) {
+                if (hi - lo == 1 && graphics.get(lo) instanceof CompositeGraphic && weight(graphics.get(lo)) > threshold) {
+                    // One large composite: split its children instead
+                    graphics = ((CompositeGraphic) graphics.get(lo)).getChildren();
+                    lo = 0;
+                    hi = graphics.size();
+                    continue;
+                }
+                long work = weight(graphics, lo, hi);
+                if (hi - lo < 2 || work <= threshold) {
+                    break;
+                }
+                // Cut where half of the graphics lie on either side, keeping both parts non-empty
+                int middle = lo;
+                long before = 0;
+                do {
+                    before += weight(graphics.get(middle++));
+                } while (middle < hi - 1 && before < work / 2);
+                long after = work - before;
+                // Continue with the larger part, so a chain never forks and forked tasks nest only logarithmically
+                if (before >= after) {
+                    tail.push(after > threshold ? fork(graphics, middle, hi, forked) : graphics.subList(middle, hi));
+                    hi = middle;
+                } else {
+                    if (before > threshold) {
+                        finishSegment(out);
+                        out = new StringBuilder();
+                        parts.add(fork(graphics, lo, middle, forked));
+                    } else {
+                        walk(graphics.subList(lo, middle), out);
+                    }
+                    lo = middle;
+                }
+            }
+            walk(graphics.subList(lo, hi), out);
+            for (Object next : tail) {
+                if (next instanceof LeafTask) {
+                    finishSegment(out);
+                    out = new StringBuilder();
+                    parts.add(next);
+                } else {
+                    @SuppressWarnings("unchecked")
+                    List<Graphic> range = (List<Graphic>) next;
+                    walk(range, out);
+                }
+            }
+            finishSegment(out);
+            for (LeafTask task : forked) {
+                task.join();
+            }
+        }
+
+        // Applies the action to every leaf below the graphics in tree order, on this thread
+        private void walk(List<Graphic> graphics, StringBuilder out) {
+            Deque<Iterator<Graphic>> stack = new ArrayDeque<>();
+            stack.push(graphics.iterator());
+            while (!stack.isEmpty()) {
+                Iterator<Graphic> children = stack.peek();
+                if (!children.hasNext()) {
+                    stack.pop();
+                    continue;
+                }
+                Graphic graphic = children.next();
+                if (graphic instanceof CompositeGraphic) {
+                    stack.push(((CompositeGraphic) graphic).getChildren().iterator());
+                } else {
+                    action.apply(graphic, out);
+                }
+            }
+        }
+
+        private LeafTask fork(List<Graphic> graphics, int start, int end, List<LeafTask> forked) {
+            LeafTask task = subtask(graphics, start, end);
+            forked.add(task);
+            task.fork();
+            return task;
+        }
+
+        private LeafTask subtask(List<Graphic> children, int start, int end) {
+            return new LeafTask(children, start, end, action, unorderedOutput);
+        }
+
+        private void finishSegment(StringBuilder out) {
+            if (out.length() == 0) {
+                return;
+            }
+            if (unorderedOutput != null) {
+                unorderedOutput.append(out);
+            } else {
+                parts.add(out);
+            }
+        }
+
+        // Concatenates all segments in tree order, without recursion
+        String assemble() {
+            StringBuilder result = new StringBuilder();
+            Deque<Iterator<Object>> stack = new ArrayDeque<>();
+            stack.push(parts.iterator());
+            while (!stack.isEmpty()) {
+                Iterator<Object> iterator = stack.peek();
+                if (!iterator.hasNext()) {
+                    stack.pop();
+                } else {
+                    Object part = iterator.next();
+                    if (part instanceof LeafTask) {
+                        stack.push(((LeafTask) part).parts.iterator());
+                    } else {
+                        result.append((StringBuilder) part);
+                    }
+                }
+            }
+            return result.toString();
+        }
+    }
+}
+
+public class ParallelCompositeExample {
+
+    // Wide tree with a deep chain hanging off the first child
+    static CompositeGraphic buildTree(int width, int depth) {
+        CompositeGraphic root = new CompositeGraphic();
+        CompositeGraphic chain = new CompositeGraphic();
+        root.add(chain);
+        for (int i = 0; i < depth; i++) {
+            CompositeGraphic next = new CompositeGraphic();
+            chain.add(i % 2 == 0 ? new Ellipse() : new Rectangle());
+            chain.add(next);
+            chain = next;
+        }
+        for (int i = 0; i < width; i++) {
+            CompositeGraphic group = new CompositeGraphic();
+            for (int j = 0; j < 100; j++) {
+                group.add(j % 2 == 0 ? new Ellipse() : new Rectangle());
+            }
+            root.add(group);
+        }
+        return root;
+    }
+
+    public static void main(String[] args) {
+        CompositeGraphic small = new CompositeGraphic();
+        small.add(new Ellipse());
+        small.add(new Rectangle());
+        GraphicTraversal traversal = new GraphicTraversal();
+        traversal.print(small, true);
+
+        // One million leaves plus a chain nested 100,000 levels deep
+        CompositeGraphic tree = buildTree(10_000, 100_000);
+        LongAdder leaves = new LongAdder();
+        traversal.forEachLeaf(tree, leaf -> leaves.increment());
+        System.out.println("Leaves: " + leaves.sum());
+
+        long start = System.nanoTime();
+        String ordered = traversal.render(tree, true);
+        System.out.printf("Ordered render: %d chars in %.1f ms%n", ordered.length(),
+                (System.nanoTime() - start) / 1e6);
+
+        StringBuilder sequential = new StringBuilder();
+        tree.render(sequential);
+        System.out.println("Matches sequential render: " + ordered.contentEquals(sequential));
+    }
+}
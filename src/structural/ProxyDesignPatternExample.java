@@ -11,6 +11,9 @@ package structural;
 //Interface representing Internet access
 interface Internet {
 	void browse(String website);
+
+	// Returns the content of the website
+	String fetch(String website);
 }
 
 //Real subject implementing Internet interface
@@ -19,6 +22,11 @@ class RealInternet implements Internet {
 	public void browse(String website) {
 		System.out.println("Browsing " + website);
 	}
+
+	@Override
+	public String fetch(String website) {
+		return "<html><title>" + website + "</title></html>";
+	}
 }
 
 //Proxy class implementing Internet interface
@@ -38,6 +46,14 @@ class InternetProxy implements Internet {
 			internet.browse(website);
 		}
 	}
+
+	@Override
+	public String fetch(String website) {
+		if (userAge < 18 && website.equals("adult-site.com")) {
+			throw new SecurityException("Access denied. You are under 18.");
+		}
+		return internet.fetch(website);
+	}
 }
 
 public class ProxyDesignPatternExample {
@@ -0,0 +1,163 @@
+package structural;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import benchmark.AllocationMeter;
+
+/**
+ * Shape.draw() concatenates a new String on every call, and writing it out
+ * encodes it into yet another byte array. The streaming render path has each
+ * Shape and Color put their pre-encoded bytes straight into a caller-supplied
+ * ByteBuffer. The bulk renderer draws a whole batch of shapes into one
+ * reusable buffer and hands the buffer to the channel with a single write. If
+ * the batch does not fit, the shape that overflowed is rolled back, the full
+ * buffer is flushed, and the shape is drawn again into the emptied buffer. A
+ * render job therefore allocates nothing once the renderer has been created.
+ */
+//Draws batches of shapes into one buffer and flushes it to a channel
+class ShapeRenderer {
+	private final ByteBuffer buffer;
+	private long writes;
+
+	ShapeRenderer(int capacity) {
+		this.buffer = ByteBuffer.allocateDirect(capacity);
+	}
+
+	// Draws every shape on its own line and returns the number of bytes written
+	public long render(Shape[] shapes, int offset, int length, WritableByteChannel channel) throws IOException {
+		long written = 0;
+		buffer.clear();
+		for (int i = offset; i < offset + length; i++) {
+			int start = buffer.position();
+			try {
+				draw(shapes[i]);
+			} catch (BufferOverflowException e) {
+				if (start == 0) {
+					throw tooLarge(e);
+				}
+				buffer.position(start);
+				written += flush(channel);
+				try {
+					draw(shapes[i]);
+				} catch (BufferOverflowException retry) {
+					throw tooLarge(retry);
+				}
+			}
+		}
+		return written + flush(channel);
+	}
+
+	// A shape that overflows an empty buffer can never be rendered
+	private IllegalArgumentException tooLarge(BufferOverflowException cause) {
+		return new IllegalArgumentException("Shape does not fit into " + buffer.capacity() + " bytes", cause);
+	}
+
+	private void draw(Shape shape) {
+		shape.draw(buffer);
+		buffer.put((byte) '\n');
+	}
+
+	private long flush(WritableByteChannel channel) throws IOException {
+		buffer.flip();
+		long written = buffer.remaining();
+		if (written > 0) {
+			writes++;
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+		buffer.clear();
+		return written;
+	}
+
+	// Buffers handed to the channel so far
+	public long getWrites() {
+		return writes;
+	}
+}
+
+//Compares the String-based draw() with the streaming renderer
+class ShapeRendererBenchmark {
+	private static final int ROUNDS = 5;
+
+	static long renderStrings(Shape[] shapes, FileChannel channel) throws IOException {
+		long written = 0;
+		for (Shape shape : shapes) {
+			ByteBuffer bytes = ByteBuffer.wrap((shape.draw() + "\n").getBytes(StandardCharsets.UTF_8));
+			written += bytes.remaining();
+			while (bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+		}
+		return written;
+	}
+
+	static void run(Shape[] shapes, FileChannel channel) throws IOException {
+		ShapeRenderer renderer = new ShapeRenderer(4 << 20);
+		long stringNanos = Long.MAX_VALUE;
+		long streamNanos = Long.MAX_VALUE;
+		long stringBytes = 0;
+		long streamBytes = 0;
+		for (int round = 0; round < ROUNDS; round++) {
+			channel.position(0);
+			long allocated = AllocationMeter.allocatedBytes();
+			long start = System.nanoTime();
+			renderStrings(shapes, channel);
+			stringNanos = Math.min(stringNanos, System.nanoTime() - start);
+			stringBytes = AllocationMeter.allocatedBytes() - allocated;
+
+			channel.position(0);
+			allocated = AllocationMeter.allocatedBytes();
+			start = System.nanoTime();
+			renderer.render(shapes, 0, shapes.length, channel);
+			streamNanos = Math.min(streamNanos, System.nanoTime() - start);
+			streamBytes = AllocationMeter.allocatedBytes() - allocated;
+		}
+		System.out.printf("%,d shapes%n", shapes.length);
+		System.out.printf("  draw() strings:     %,8.1f ns/shape, %,10d bytes allocated, %,d writes%n",
+				(double) stringNanos / shapes.length, stringBytes, shapes.length);
+		System.out.printf("  streaming renderer: %,8.1f ns/shape, %,10d bytes allocated, %,d writes per job%n",
+				(double) streamNanos / shapes.length, streamBytes, renderer.getWrites() / ROUNDS);
+	}
+}
+
+public class ShapeRendererExample {
+	public static void main(String[] args) throws IOException {
+		Color red = new RedColor();
+		Color blue = new BlueColor();
+
+		// Appendable output: the parts are appended without building a String per shape
+		StringBuilder out = new StringBuilder();
+		new Square(red).draw(out);
+		out.append(System.lineSeparator());
+		new Circle(blue).draw(out);
+		System.out.println(out);
+
+		Shape[] shapes = new Shape[10_000];
+		for (int i = 0; i < shapes.length; i++) {
+			shapes[i] = i % 2 == 0 ? new Square(red) : new Circle(blue);
+		}
+
+		Path file = Files.createTempFile("shapes", ".txt");
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			ShapeRenderer renderer = new ShapeRenderer(1 << 20);
+			long written = renderer.render(shapes, 0, shapes.length, channel);
+			System.out.printf("Rendered %,d shapes, %,d bytes in %d write(s)%n", shapes.length, written,
+					renderer.getWrites());
+
+			if (args.length > 0 && args[0].equals("--benchmark")) {
+				ShapeRendererBenchmark.run(shapes, channel);
+			}
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+}